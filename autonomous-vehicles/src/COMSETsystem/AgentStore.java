@@ -0,0 +1,176 @@
+package COMSETsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The AgentStore class keeps the state of the agents in columns, one primitive array per field,
+ * indexed by a dense agent index: the first AgentEvent created has index 0, the next one index 1,
+ * and so on. An AgentEvent reads and writes its location, the time at which it is there and the
+ * start of its search in the store, so that a pool or the statistics scan a few arrays in order
+ * instead of following every AgentEvent to its LocationOnRoad and Road. Whether an agent is empty
+ * is kept by the DenseIdSet emptyAgents of the simulator, on the same indices.
+ *
+ * A location is stored as the index of its road in a table of the roads seen so far, and its
+ * travel time from the start intersection of the road. Its coordinates are computed once, when it
+ * is set.
+ */
+public class AgentStore {
+
+	// The AgentEvent of every agent, to go back from a scan to the event and the BaseAgent.
+	private AgentEvent[] agents;
+
+	// The location of every agent: the index of its road in roads, and the travel time from the start
+	// intersection of the road.
+	private int[] road;
+	private long[] offset;
+
+	// The coordinates of the location of every agent.
+	private double[] latitude;
+	private double[] longitude;
+
+	// The time at which every agent is at its location: the time of its next event, except on a committed
+	// route, where it is the time the agent reaches the end of its current road.
+	private long[] time;
+
+	// The time at which every agent started to search for a resource.
+	private long[] searchStartTime;
+
+	private int size = 0;
+
+	private final List<Road> roads = new ArrayList<>();
+	private final Map<Road, Integer> roadIndex = new IdentityHashMap<>();
+
+	/**
+	 * Constructs an empty store.
+	 *
+	 * @param capacity the number of agents expected; the store grows beyond it if needed
+	 */
+	public AgentStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		agents = new AgentEvent[capacity];
+		road = new int[capacity];
+		offset = new long[capacity];
+		latitude = new double[capacity];
+		longitude = new double[capacity];
+		time = new long[capacity];
+		searchStartTime = new long[capacity];
+	}
+
+	/**
+	 * Adds an agent. Its location must be set before it is read.
+	 *
+	 * @param agent the AgentEvent of the agent
+	 * @return the index of the agent
+	 */
+	public int add(AgentEvent agent) {
+		if (size == agents.length) {
+			int capacity = 2 * size;
+			agents = Arrays.copyOf(agents, capacity);
+			road = Arrays.copyOf(road, capacity);
+			offset = Arrays.copyOf(offset, capacity);
+			latitude = Arrays.copyOf(latitude, capacity);
+			longitude = Arrays.copyOf(longitude, capacity);
+			time = Arrays.copyOf(time, capacity);
+			searchStartTime = Arrays.copyOf(searchStartTime, capacity);
+		}
+		agents[size] = agent;
+		return size++;
+	}
+
+	/**
+	 * @return the number of agents, one more than the highest index
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @return the AgentEvent of the agent
+	 */
+	public AgentEvent agent(int agent) {
+		return agents[agent];
+	}
+
+	/**
+	 * Sets the location of an agent and the time at which it is there.
+	 *
+	 * @param agent the index of the agent
+	 * @param location the location
+	 * @param time the time
+	 */
+	public void setLocation(int agent, LocationOnRoad location, long time) {
+		Integer index = roadIndex.get(location.road);
+		if (index == null) {
+			index = roads.size();
+			roads.add(location.road);
+			roadIndex.put(location.road, index);
+		}
+		double[] latLon = location.toLatLon();
+		road[agent] = index;
+		offset[agent] = location.travelTimeFromStartIntersection;
+		latitude[agent] = latLon[0];
+		longitude[agent] = latLon[1];
+		this.time[agent] = time;
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @return a new LocationOnRoad holding the location of the agent
+	 */
+	public LocationOnRoad location(int agent) {
+		return new LocationOnRoad(roads.get(road[agent]), offset[agent]);
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @return the road of the location of the agent
+	 */
+	public Road road(int agent) {
+		return roads.get(road[agent]);
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @return the latitude of the location of the agent
+	 */
+	public double latitude(int agent) {
+		return latitude[agent];
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @return the longitude of the location of the agent
+	 */
+	public double longitude(int agent) {
+		return longitude[agent];
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @return the time at which the agent is at its location
+	 */
+	public long time(int agent) {
+		return time[agent];
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @return the time at which the agent started to search for a resource
+	 */
+	public long searchStartTime(int agent) {
+		return searchStartTime[agent];
+	}
+
+	/**
+	 * @param agent the index of an agent
+	 * @param time the time at which the agent started to search for a resource
+	 */
+	public void setSearchStartTime(int agent, long time) {
+		searchStartTime[agent] = time;
+	}
+}
@@ -1,5 +1,7 @@
 package COMSETsystem;
 
+import java.util.LinkedList;
+
 /**
  * The BaseAgent class is the class the participants should extend in order to create an Agent that will be used in
  * Simulator to run the simulation. The participants should extend the BaseAgent class to implement their agent search
@@ -49,6 +51,23 @@ public abstract class BaseAgent {
 	 */
 	public abstract Intersection nextIntersection(LocationOnRoad currentLocation, long currentTime); 
 
+	/**
+	 * This is a callback method called when the agent reaches an intersection, before nextIntersection. An agent that
+	 * already knows the intersections it is going to drive through can commit to them by returning them, starting with
+	 * a neighbor of the end intersection of the current road. The Simulator then moves the agent along the whole route
+	 * in a single event, without calling nextIntersection or this method until the end of the route is reached or the
+	 * agent is assigned to a resource, and only works out where on the route the agent is when it needs to know.
+	 *
+	 * The default implementation returns null, so that the Simulator calls nextIntersection at every intersection.
+	 *
+	 * @param currentLocation The agent's location at the time when the method is called
+	 * @param currentTime The time at which the method is invoked
+	 * @return The intersections that the agent is going to move to in order, or null to be asked at every intersection
+	 */
+	public LinkedList<Intersection> commitRoute(LocationOnRoad currentLocation, long currentTime) {
+		return null;
+	}
+
 	/**
 	 * This method is to inform the agent that it is assigned to a resource. No action is necessary from the agent. The agent
 	 * will be automatically moved to the destination of the resource. The method is provided in case that the agent wants to use
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -11,18 +12,16 @@ import java.util.LinkedList;
 import java.util.Set;
 import java.util.TreeMap;
 
-import com.google.common.collect.ImmutableList;
 import net.iakovlev.timeshape.TimeZoneEngine;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import DataParsing.GeoProjector;
-import DataParsing.KdTree;
+import DataParsing.LinkIndex;
 
-import java.util.PriorityQueue;
-import java.awt.geom.Point2D;
 import java.time.ZoneId;
+import java.util.stream.IntStream;
 
 
 /**
@@ -41,31 +40,34 @@ public class CityMap {
 	// A projector to convert between lat,lon coordinates and xy coordinates.
 	private GeoProjector projector;
 
-	// kdTree for map matching
-	private KdTree kdTree;
+	// spatial index of the links for map matching
+	private LinkIndex linkIndex;
 
-	// Shortest travel-time path table.
-	private ImmutableList<ImmutableList<PathTableEntry>> immutablePathTable;
+	// Shortest travel-time path table; null if the map is routed with a contraction hierarchy.
+	private PathTable pathTable;
+
+	// The oracle answering travel-time and shortest-path queries: pathTable or a ContractionHierarchy.
+	private TravelTimeOracle travelTimeOracle;
 	
-	// A map from an intersection's path table index to the intersection itself.
-	private HashMap<Integer, Intersection> intersectionsByPathTableIndex;
+	// An array from an intersection's path table index to the intersection itself.
+	private Intersection[] intersectionsByPathTableIndex;
 
 	/*
 	 * Constructor of CityMap
 	 */
 	public CityMap(Map<Long, Intersection> intersections, List<Road> roads, 
-			GeoProjector projector, KdTree kdTree) {
+			GeoProjector projector, LinkIndex linkIndex) {
 		this.intersections = intersections;
 		this.projector = projector;
-		this.kdTree = kdTree;
+		this.linkIndex = linkIndex;
 		this.roads = roads;
 
 		// setup pathTableIndex for every intersection
-		intersectionsByPathTableIndex = new HashMap<Integer, Intersection>();
+		intersectionsByPathTableIndex = new Intersection[intersections.size()];
 		int index = 0;
 		for (Intersection intersection : intersections.values()) {
 			intersection.pathTableIndex = index++;
-			intersectionsByPathTableIndex.put(intersection.pathTableIndex, intersection);
+			intersectionsByPathTableIndex[intersection.pathTableIndex] = intersection;
 		}
 
 	}
@@ -86,7 +88,7 @@ public class CityMap {
 	 * @return the time in seconds it takes to go from source to destination
 	 */
 	public long travelTimeBetween (Intersection source, Intersection destination) {
-		return immutablePathTable.get(source.pathTableIndex).get(destination.pathTableIndex).travelTime;
+		return travelTimeOracle.travelTime(source.pathTableIndex, destination.pathTableIndex);
 	}
 
 
@@ -113,6 +115,70 @@ public class CityMap {
 		return travelTime;
 	}        
 
+	/**
+	 * Gets the travel times from every source location to every destination location in one call.
+	 * Entry [i][j] of the result equals travelTimeBetween(sources.get(i), destinations.get(j)).
+	 * The end intersections of the source roads and the start intersections of the destination
+	 * roads are deduplicated and their travel times obtained from the routing engine in bulk; the
+	 * rows are then filled in parallel.
+	 *
+	 * @param sources The locations to depart from
+	 * @param destinations The locations to arrive at
+	 * @return the matrix of travel times in seconds, one row per source
+	 */
+	public long[][] travelTimes(List<LocationOnRoad> sources, List<LocationOnRoad> destinations) {
+		LocationOnRoad[] sourceArray = sources.toArray(new LocationOnRoad[0]);
+		LocationOnRoad[] destinationArray = destinations.toArray(new LocationOnRoad[0]);
+
+		// the distinct intersections, and for every location the position of its intersection
+		int[] sourceColumn = new int[sourceArray.length];
+		int[] sourceIntersections = distinctIntersections(sourceArray, true, sourceColumn);
+		int[] destinationColumn = new int[destinationArray.length];
+		int[] destinationIntersections = distinctIntersections(destinationArray, false, destinationColumn);
+		long[][] intersectionTravelTimes = travelTimeOracle.travelTimes(sourceIntersections, destinationIntersections);
+
+		long[][] travelTimes = new long[sourceArray.length][destinationArray.length];
+		IntStream.range(0, sourceArray.length).parallel().forEach(i -> {
+			LocationOnRoad source = sourceArray[i];
+			long travelTimeToEndIntersectionOfSource = source.road.travelTime - source.travelTimeFromStartIntersection;
+			long[] intersectionRow = intersectionTravelTimes[sourceColumn[i]];
+			long[] row = travelTimes[i];
+			for (int j = 0; j < destinationArray.length; j++) {
+				LocationOnRoad destination = destinationArray[j];
+				if (source.road == destination.road && source.travelTimeFromStartIntersection <= destination.travelTimeFromStartIntersection) {
+					row[j] = destination.travelTimeFromStartIntersection - source.travelTimeFromStartIntersection;
+				} else {
+					row[j] = travelTimeToEndIntersectionOfSource + intersectionRow[destinationColumn[j]] + destination.travelTimeFromStartIntersection;
+				}
+			}
+		});
+		return travelTimes;
+	}
+
+	/**
+	 * Collects the distinct end (or start) intersections of the roads of some locations.
+	 *
+	 * @param locations the locations
+	 * @param end true to take the end intersection of every road, false to take the start intersection
+	 * @param positions receives, for every location, the position of its intersection in the result
+	 * @return the path table indices of the distinct intersections
+	 */
+	private int[] distinctIntersections(LocationOnRoad[] locations, boolean end, int[] positions) {
+		int[] position = new int[intersectionsByPathTableIndex.length];
+		Arrays.fill(position, -1);
+		int[] intersections = new int[locations.length];
+		int count = 0;
+		for (int i = 0; i < locations.length; i++) {
+			int index = (end ? locations[i].road.to : locations[i].road.from).pathTableIndex;
+			if (position[index] < 0) {
+				position[index] = count;
+				intersections[count++] = index;
+			}
+			positions[i] = position[index];
+		}
+		return Arrays.copyOf(intersections, count);
+	}
+
 	/**
 	 * @return { @code projector }
 	 */
@@ -130,83 +196,69 @@ public class CityMap {
 	 */
 	public Link getNearestLink(double longitude, double latitude){
 		double[] xy = projector.fromLatLon(latitude, longitude);
-		Point2D p = new Point2D.Double(xy[0], xy[1]);
-		return kdTree.nearest(p);    	
+		return getNearestLink(xy);
 	}
 
 	/**
-	 * Compute all-pair shortest travel times. This is done by computing one-to-all shortest travel times
-	 * from each intersection using Dijkstra.
+	 * Finds nearest link of a point given in the coordinates of projector().
+	 * Safe to call from several threads.
+	 *
+	 * @param xy The {x, y} coordinates of the point
+	 * @return The closest link to the given point
 	 */
-	public void calcTravelTimes() {
-		ArrayList<ArrayList<PathTableEntry>> pathTable;
-
-		// initialize path table
-		pathTable = new ArrayList<ArrayList<PathTableEntry>>();
-		for (int i = 0; i < intersections.size(); i++) {
-			ArrayList<PathTableEntry> aList = new ArrayList<PathTableEntry>();
-			for (int j = 0; j < intersections.size(); j++) {
-				aList.add(null);
-			}
-			pathTable.add(aList);
-		}
+	public Link getNearestLink(double[] xy) {
+		return linkIndex.nearest(xy[0], xy[1]);
+	}
 
-		// creates a queue entry for each intersection
-		HashMap<Intersection, DijkstraQueueEntry> queueEntry = new HashMap<>();
-		for (Intersection i : intersections.values()) {
-			queueEntry.put(i, new DijkstraQueueEntry(i));
-		}
+	/**
+	 * Compute all-pair shortest travel times using one thread per available processor.
+	 * See calcTravelTimes(int).
+	 */
+	public void calcTravelTimes() {
+		calcTravelTimes(0);
+	}
 
-		for (Intersection source : intersections.values()) {
-			// 'reset' every queue entry
-			for (DijkstraQueueEntry entry : queueEntry.values()) {
-				entry.cost = Long.MAX_VALUE;
-				entry.inQueue = true;
-			}
+	/**
+	 * Compute all-pair shortest travel times. This is done by computing one-to-all shortest travel times
+	 * from each intersection using Dijkstra. The sources are processed in parallel; the resulting table
+	 * does not depend on the number of threads.
+	 *
+	 * @param numberOfThreads the number of threads to use; 0 or less means one per available processor
+	 */
+	public void calcTravelTimes(int numberOfThreads) {
+		pathTable = new PathTableBuilder(intersections.values()).build(numberOfThreads);
+		travelTimeOracle = pathTable;
+	}
 
-			// source is set at distance 0
-			DijkstraQueueEntry sourceEntry = queueEntry.get(source);
-			sourceEntry.cost = 0;
-			pathTable.get(source.pathTableIndex).set(source.pathTableIndex, new PathTableEntry(0L, source.pathTableIndex));
-
-			PriorityQueue<DijkstraQueueEntry> queue = new PriorityQueue<>(queueEntry.values());
-
-			while (!queue.isEmpty()) {
-				DijkstraQueueEntry entry = queue.poll();
-				entry.inQueue = false;
-
-				for (Road r : entry.intersection.getRoadsFrom()) {
-					DijkstraQueueEntry v = queueEntry.get(r.to);
-					if (!v.inQueue) continue;
-					long ncost = entry.cost + r.travelTime;
-					if (v.cost > ncost) {
-						queue.remove(v);
-						v.cost = ncost;
-						pathTable.get(source.pathTableIndex).set(v.intersection.pathTableIndex, new PathTableEntry(v.cost, entry.intersection.pathTableIndex));
-						queue.add(v);
-					}
-				}
-			}
-		}
+	/**
+	 * Preprocess the map into a contraction hierarchy and use it, instead of an all-pair path table,
+	 * to answer travel-time and shortest-path queries. Its memory is linear in the size of the map.
+	 */
+	public void calcContractionHierarchy() {
+		pathTable = null;
+		travelTimeOracle = new ContractionHierarchy(intersections.values());
+	}
 
-		// Make the path table unmodifiable
-		makePathTableUnmodifiable(pathTable);
+	/**
+	 * @return the all-pair shortest travel-time table, or null if it has not been computed or the
+	 * map is routed with a contraction hierarchy
+	 */
+	public PathTable pathTable() {
+		return pathTable;
 	}
 
 	/**
-	 * Make a path table unmodifiable.
-	 * @param pathTable
+	 * Use a previously computed all-pair shortest travel-time table, e.g., one loaded from a
+	 * PathTableCache, instead of calling calcTravelTimes.
+	 *
+	 * @param pathTable the table; it must cover every intersection of the map
 	 */
-	public void makePathTableUnmodifiable(ArrayList<ArrayList<PathTableEntry>> pathTable) {
-		ArrayList<ImmutableList<PathTableEntry>> aListOfImmutableList = new ArrayList<ImmutableList<PathTableEntry>>();
-		for (int i = 0; i < intersections.size(); i++) {
-			ArrayList<PathTableEntry> aListOfPathTableEntries = pathTable.get(i);
-			aListOfImmutableList.add(ImmutableList.copyOf(aListOfPathTableEntries));
-			aListOfPathTableEntries.clear();
+	public void setPathTable(PathTable pathTable) {
+		if (pathTable.size() != intersections.size()) {
+			throw new IllegalArgumentException("path table covers " + pathTable.size() + " intersections, map has " + intersections.size());
 		}
-		pathTable.clear();
-
-		immutablePathTable = ImmutableList.copyOf(aListOfImmutableList);
+		this.pathTable = pathTable;
+		this.travelTimeOracle = pathTable;
 	}
 
 	/**
@@ -216,52 +268,17 @@ public class CityMap {
 	 * @return LinkedList<Intersection> an ordered list of intersections forming the path
 	 */
 	public LinkedList<Intersection> shortestTravelTimePath(Intersection source, Intersection destination) {
+		int[] indices = travelTimeOracle.path(source.pathTableIndex, destination.pathTableIndex);
+		if (indices == null) {
+			throw new IllegalArgumentException("no path from " + source + " to " + destination);
+		}
 		LinkedList<Intersection> path = new LinkedList<Intersection>();
-		path.addFirst(destination);
-		int current = destination.pathTableIndex;
-		while (current != source.pathTableIndex) {
-			int pred = immutablePathTable.get(source.pathTableIndex).get(current).predecessor;
-			path.addFirst(intersectionsByPathTableIndex.get(pred));
-			current = pred;
+		for (int index : indices) {
+			path.add(intersectionsByPathTableIndex[index]);
 		}
 		return path;
 	}
 
-	private class DijkstraQueueEntry implements Comparable<DijkstraQueueEntry> {
-		Intersection intersection;
-		long cost = Long.MAX_VALUE;
-		boolean inQueue = true;
-
-		DijkstraQueueEntry(Intersection intersection) {
-			this.intersection = intersection;
-		}
-
-		@Override
-		public int compareTo(DijkstraQueueEntry j) {
-			if (this.cost < j.cost) {
-				return -1;
-			} else if (this.cost > j.cost) {
-				return 1;
-			} else if (this.intersection.id < j.intersection.id) {
-				return -1;
-			} else if (this.intersection.id > j.intersection.id) {
-				return 1;
-			} else {
-				return 0;
-			}
-		}
-	}
-
-	private class PathTableEntry {
-		final long travelTime;
-		final int predecessor;
-
-		PathTableEntry(long travelTime, int predecessor) {
-			this.travelTime = travelTime;
-			this.predecessor = predecessor;
-		}
-	}
-
 	/**
 	 * @return { @code roads }
 	 */
@@ -347,13 +364,14 @@ public class CityMap {
 		CityMap cityMap = new CityMap();
 		cityMap.intersections = intersectionsCopy;
 		cityMap.roads = roadsCopy;
-		cityMap.immutablePathTable = immutablePathTable;
+		cityMap.pathTable = pathTable;
+		cityMap.travelTimeOracle = travelTimeOracle;
 		cityMap.projector = projector;
-		cityMap.kdTree = kdTree;
+		cityMap.linkIndex = linkIndex;
 		
-		cityMap.intersectionsByPathTableIndex = new HashMap<Integer, Intersection>();
+		cityMap.intersectionsByPathTableIndex = new Intersection[cityMap.intersections.size()];
 		for (Intersection intersection : cityMap.intersections.values()) {
-			cityMap.intersectionsByPathTableIndex.put(intersection.pathTableIndex, intersection);
+			cityMap.intersectionsByPathTableIndex[intersection.pathTableIndex] = intersection;
 		}
 		
 		return cityMap;
@@ -0,0 +1,624 @@
+package COMSETsystem;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+/**
+ * The ContractionHierarchy class answers shortest travel-time queries with contraction
+ * hierarchies, as an alternative to the all-pair PathTable for maps that are too large for a
+ * table with one entry per pair of intersections. Its memory is linear in the size of the map.
+ *
+ * During preprocessing the intersections are contracted one by one, in the order of a heuristic
+ * priority (edge difference plus the number of contracted neighbors). Contracting an intersection
+ * v removes it from the remaining graph and adds a shortcut u->x for every pair of roads u->v->x
+ * that is the only shortest path from u to x, which is checked by a local witness search. The
+ * contraction order is the rank of an intersection. A query runs a bidirectional Dijkstra that
+ * only follows edges towards higher-ranked intersections; a path is recovered by recursively
+ * unpacking the shortcuts on the path found.
+ *
+ * Many-to-many queries use buckets: a complete upward search backward from every destination
+ * records, at every intersection it reaches, the destination and the travel time to it; a
+ * complete upward search forward from every source then scans the buckets of the intersections
+ * it reaches. Both kinds of searches run in parallel.
+ *
+ * Travel times are exact. When several shortest paths exist, the path returned may differ from
+ * the one stored in the PathTable.
+ */
+public class ContractionHierarchy implements TravelTimeOracle {
+
+	// The middle intersection of an edge that is a road rather than a shortcut.
+	private final static int NO_MIDDLE = -1;
+
+	// The travel time of an intersection that has not been reached.
+	private final static int UNREACHED = Integer.MAX_VALUE;
+
+	// A witness search gives up after settling this many intersections and adds the shortcut.
+	// Estimating the priority of an intersection uses a cheaper search than contracting it.
+	private final static int WITNESS_SETTLE_LIMIT = 500;
+	private final static int PRIORITY_WITNESS_SETTLE_LIMIT = 50;
+
+	// The number of intersections
+	private final int size;
+
+	// The contraction order of each intersection
+	private final int[] rank;
+
+	// The edges u->x with rank[x] > rank[u] are outHead[outFirst[u]] ... outHead[outFirst[u + 1] - 1].
+	private final int[] outFirst;
+	private final int[] outHead;
+	private final int[] outWeight;
+	private final int[] outMiddle;
+
+	// The edges u->v with rank[u] > rank[v] are inTail[inFirst[v]] ... inTail[inFirst[v + 1] - 1].
+	private final int[] inFirst;
+	private final int[] inTail;
+	private final int[] inWeight;
+	private final int[] inMiddle;
+
+	// The scratch state of queries, one per thread.
+	private final ThreadLocal<Query> queries;
+
+	/**
+	 * Contracts the road network formed by the given intersections.
+	 *
+	 * @param intersections the intersections of the map; their pathTableIndex must be set
+	 */
+	public ContractionHierarchy(Collection<Intersection> intersections) {
+		size = intersections.size();
+		rank = new int[size];
+
+		EdgeList[] out = new EdgeList[size];
+		EdgeList[] in = new EdgeList[size];
+		for (int i = 0; i < size; i++) {
+			out[i] = new EdgeList();
+			in[i] = new EdgeList();
+		}
+		for (Intersection intersection : intersections) {
+			for (Road road : intersection.getRoadsFrom()) {
+				addEdge(out, in, intersection.pathTableIndex, road.to.pathTableIndex, Math.toIntExact(road.travelTime), NO_MIDDLE);
+			}
+		}
+
+		new Contractor(out, in).contractAll();
+
+		outFirst = new int[size + 1];
+		inFirst = new int[size + 1];
+		int numberOfOutEdges = 0;
+		int numberOfInEdges = 0;
+		for (int u = 0; u < size; u++) {
+			for (int e = 0; e < out[u].size; e++) {
+				if (rank[out[u].node[e]] > rank[u]) numberOfOutEdges++;
+			}
+			for (int e = 0; e < in[u].size; e++) {
+				if (rank[in[u].node[e]] > rank[u]) numberOfInEdges++;
+			}
+		}
+		outHead = new int[numberOfOutEdges];
+		outWeight = new int[numberOfOutEdges];
+		outMiddle = new int[numberOfOutEdges];
+		inTail = new int[numberOfInEdges];
+		inWeight = new int[numberOfInEdges];
+		inMiddle = new int[numberOfInEdges];
+		int outEdge = 0;
+		int inEdge = 0;
+		for (int u = 0; u < size; u++) {
+			outFirst[u] = outEdge;
+			for (int e = 0; e < out[u].size; e++) {
+				if (rank[out[u].node[e]] > rank[u]) {
+					outHead[outEdge] = out[u].node[e];
+					outWeight[outEdge] = out[u].weight[e];
+					outMiddle[outEdge] = out[u].middle[e];
+					outEdge++;
+				}
+			}
+			inFirst[u] = inEdge;
+			for (int e = 0; e < in[u].size; e++) {
+				if (rank[in[u].node[e]] > rank[u]) {
+					inTail[inEdge] = in[u].node[e];
+					inWeight[inEdge] = in[u].weight[e];
+					inMiddle[inEdge] = in[u].middle[e];
+					inEdge++;
+				}
+			}
+		}
+		outFirst[size] = outEdge;
+		inFirst[size] = inEdge;
+
+		queries = ThreadLocal.withInitial(Query::new);
+	}
+
+	/**
+	 * @return the number of edges, roads and shortcuts, kept for queries
+	 */
+	public int numberOfEdges() {
+		return outHead.length + inTail.length;
+	}
+
+	@Override
+	public long travelTime(int source, int destination) {
+		if (source == destination) {
+			return 0;
+		}
+		Query query = queries.get();
+		query.run(source, destination);
+		return query.best == UNREACHED ? Long.MAX_VALUE : query.best;
+	}
+
+	@Override
+	public int[] path(int source, int destination) {
+		if (source == destination) {
+			return new int[] {source};
+		}
+		Query query = queries.get();
+		query.run(source, destination);
+		if (query.best == UNREACHED) {
+			return null;
+		}
+
+		IntList path = new IntList();
+		path.add(source);
+
+		// the edges from source up to the meeting intersection, found backwards
+		IntList upward = new IntList();
+		for (int v = query.meet; v != source; v = query.forwardParent[v]) {
+			upward.add(query.forwardParentEdge[v]);
+		}
+		int current = source;
+		for (int i = upward.size - 1; i >= 0; i--) {
+			int e = upward.values[i];
+			unpack(current, outHead[e], outMiddle[e], path);
+			current = outHead[e];
+		}
+
+		// the edges from the meeting intersection down to destination
+		for (int v = query.meet; v != destination; v = query.backwardParent[v]) {
+			int e = query.backwardParentEdge[v];
+			unpack(v, query.backwardParent[v], inMiddle[e], path);
+		}
+		return Arrays.copyOf(path.values, path.size);
+	}
+
+	@Override
+	public long[][] travelTimes(int[] sources, int[] destinations) {
+		// the intersections reached backward from every destination, and their travel times to it
+		int[][] reached = new int[destinations.length][];
+		int[][] reachedCost = new int[destinations.length][];
+		IntStream.range(0, destinations.length).parallel().forEach(j -> {
+			Query query = queries.get();
+			query.searchUpward(destinations[j], false);
+			reached[j] = Arrays.copyOf(query.touched.values, query.touched.size);
+			reachedCost[j] = new int[query.touched.size];
+			for (int k = 0; k < query.touched.size; k++) {
+				reachedCost[j][k] = query.backwardCost[reached[j][k]];
+			}
+		});
+
+		// the bucket of intersection v is bucketDestination/bucketCost[bucketFirst[v]] ... [bucketFirst[v + 1] - 1]
+		int[] bucketFirst = new int[size + 1];
+		for (int[] nodes : reached) {
+			for (int v : nodes) {
+				bucketFirst[v + 1]++;
+			}
+		}
+		for (int v = 0; v < size; v++) {
+			bucketFirst[v + 1] += bucketFirst[v];
+		}
+		int[] bucketDestination = new int[bucketFirst[size]];
+		int[] bucketCost = new int[bucketFirst[size]];
+		int[] next = Arrays.copyOf(bucketFirst, size);
+		for (int j = 0; j < destinations.length; j++) {
+			for (int k = 0; k < reached[j].length; k++) {
+				int b = next[reached[j][k]]++;
+				bucketDestination[b] = j;
+				bucketCost[b] = reachedCost[j][k];
+			}
+		}
+
+		long[][] travelTimes = new long[sources.length][destinations.length];
+		IntStream.range(0, sources.length).parallel().forEach(i -> {
+			long[] row = travelTimes[i];
+			Arrays.fill(row, Long.MAX_VALUE);
+			Query query = queries.get();
+			query.searchUpward(sources[i], true);
+			for (int k = 0; k < query.touched.size; k++) {
+				int v = query.touched.values[k];
+				long cost = query.forwardCost[v];
+				for (int b = bucketFirst[v]; b < bucketFirst[v + 1]; b++) {
+					long travelTime = cost + bucketCost[b];
+					if (travelTime < row[bucketDestination[b]]) {
+						row[bucketDestination[b]] = travelTime;
+					}
+				}
+			}
+		});
+		return travelTimes;
+	}
+
+	/**
+	 * Appends the intersections of the edge from -> to, except from, to a path.
+	 */
+	private void unpack(int from, int to, int middle, IntList path) {
+		IntList stack = new IntList();
+		stack.add(from);
+		stack.add(to);
+		stack.add(middle);
+		while (stack.size > 0) {
+			int m = stack.values[--stack.size];
+			int b = stack.values[--stack.size];
+			int a = stack.values[--stack.size];
+			if (m == NO_MIDDLE) {
+				path.add(b);
+				continue;
+			}
+			// m has a lower rank than a and b: a->m is an incoming edge of m, m->b an outgoing one.
+			stack.add(m);
+			stack.add(b);
+			stack.add(outMiddle[findOutEdge(m, b)]);
+			stack.add(a);
+			stack.add(m);
+			stack.add(inMiddle[findInEdge(a, m)]);
+		}
+	}
+
+	private int findOutEdge(int from, int to) {
+		for (int e = outFirst[from]; e < outFirst[from + 1]; e++) {
+			if (outHead[e] == to) return e;
+		}
+		throw new IllegalStateException("missing edge " + from + " -> " + to);
+	}
+
+	private int findInEdge(int from, int to) {
+		for (int e = inFirst[to]; e < inFirst[to + 1]; e++) {
+			if (inTail[e] == from) return e;
+		}
+		throw new IllegalStateException("missing edge " + from + " -> " + to);
+	}
+
+	/**
+	 * Adds the edge from -> to, or lowers the weight of the existing edge if the new one is shorter.
+	 */
+	private static void addEdge(EdgeList[] out, EdgeList[] in, int from, int to, int weight, int middle) {
+		int e = out[from].indexOf(to);
+		if (e < 0) {
+			out[from].add(to, weight, middle);
+			in[to].add(from, weight, middle);
+		} else if (weight < out[from].weight[e]) {
+			out[from].weight[e] = weight;
+			out[from].middle[e] = middle;
+			int f = in[to].indexOf(from);
+			in[to].weight[f] = weight;
+			in[to].middle[f] = middle;
+		}
+	}
+
+	/**
+	 * The preprocessing state: the remaining graph and the priority queue of intersections.
+	 */
+	private class Contractor {
+		final EdgeList[] out;
+		final EdgeList[] in;
+		final boolean[] contracted = new boolean[size];
+		final int[] contractedNeighbors = new int[size];
+		final IndexedMinHeap queue = new IndexedMinHeap(size);
+
+		// witness search scratch
+		final int[] witnessCost = new int[size];
+		final IndexedMinHeap witnessHeap = new IndexedMinHeap(size);
+		final IntList touched = new IntList();
+
+		// the shortcuts found by the last call to findShortcuts, as (from, to, weight) triples
+		final IntList shortcuts = new IntList();
+
+		Contractor(EdgeList[] out, EdgeList[] in) {
+			this.out = out;
+			this.in = in;
+			Arrays.fill(witnessCost, UNREACHED);
+		}
+
+		void contractAll() {
+			for (int v = 0; v < size; v++) {
+				queue.add(v, key(priority(v), v));
+			}
+			int nextRank = 0;
+			while (!queue.isEmpty()) {
+				int v = queue.poll();
+				// lazy update: the priority may have grown since v was queued
+				long key = key(priority(v), v);
+				if (!queue.isEmpty() && key > queue.key(queue.peek())) {
+					queue.add(v, key);
+					continue;
+				}
+
+				findShortcuts(v, WITNESS_SETTLE_LIMIT);
+				for (int i = 0; i < shortcuts.size; i += 3) {
+					addEdge(out, in, shortcuts.values[i], shortcuts.values[i + 1], shortcuts.values[i + 2], v);
+				}
+				contracted[v] = true;
+				rank[v] = nextRank++;
+
+				// The edges of v now only lead to higher-ranked intersections and stay with v;
+				// remove them from its neighbors so that the remaining graph stays small.
+				for (int e = 0; e < out[v].size; e++) {
+					in[out[v].node[e]].remove(v);
+				}
+				for (int e = 0; e < in[v].size; e++) {
+					out[in[v].node[e]].remove(v);
+				}
+
+				updateNeighbor(out[v]);
+				updateNeighbor(in[v]);
+			}
+		}
+
+		private void updateNeighbor(EdgeList edges) {
+			for (int e = 0; e < edges.size; e++) {
+				int u = edges.node[e];
+				if (!contracted[u]) {
+					contractedNeighbors[u]++;
+					queue.changeKey(u, key(priority(u), u));
+				}
+			}
+		}
+
+		private long key(int priority, int v) {
+			return (long) priority << 32 | v;
+		}
+
+		private int priority(int v) {
+			findShortcuts(v, PRIORITY_WITNESS_SETTLE_LIMIT);
+			int removed = 0;
+			for (int e = 0; e < out[v].size; e++) {
+				if (!contracted[out[v].node[e]]) removed++;
+			}
+			for (int e = 0; e < in[v].size; e++) {
+				if (!contracted[in[v].node[e]]) removed++;
+			}
+			return shortcuts.size / 3 - removed + contractedNeighbors[v];
+		}
+
+		/**
+		 * Finds the shortcuts needed to contract v into shortcuts.
+		 */
+		private void findShortcuts(int v, int settleLimit) {
+			shortcuts.size = 0;
+			EdgeList incoming = in[v];
+			EdgeList outgoing = out[v];
+			int maxOutgoing = 0;
+			for (int f = 0; f < outgoing.size; f++) {
+				if (!contracted[outgoing.node[f]]) maxOutgoing = Math.max(maxOutgoing, outgoing.weight[f]);
+			}
+			for (int e = 0; e < incoming.size; e++) {
+				int u = incoming.node[e];
+				if (contracted[u]) continue;
+				long limit = (long) incoming.weight[e] + maxOutgoing;
+				witnessSearch(u, v, limit, settleLimit);
+				for (int f = 0; f < outgoing.size; f++) {
+					int x = outgoing.node[f];
+					if (contracted[x] || x == u) continue;
+					long viaV = (long) incoming.weight[e] + outgoing.weight[f];
+					if (witnessCost[x] > viaV) {
+						if (viaV >= UNREACHED) {
+							throw new IllegalStateException("travel time does not fit in an int: " + viaV);
+						}
+						shortcuts.add(u);
+						shortcuts.add(x);
+						shortcuts.add((int) viaV);
+					}
+				}
+				resetWitnessSearch();
+			}
+		}
+
+		/**
+		 * Dijkstra from source in the remaining graph without via, up to the given travel time.
+		 */
+		private void witnessSearch(int source, int via, long limit, int settleLimit) {
+			witnessCost[source] = 0;
+			touched.add(source);
+			witnessHeap.add(source, 0);
+			int settled = 0;
+			while (!witnessHeap.isEmpty() && settled < settleLimit) {
+				int u = witnessHeap.poll();
+				int costU = witnessCost[u];
+				if (costU > limit) break;
+				settled++;
+				EdgeList edges = out[u];
+				for (int e = 0; e < edges.size; e++) {
+					int x = edges.node[e];
+					if (x == via || contracted[x]) continue;
+					long cost = (long) costU + edges.weight[e];
+					if (cost < witnessCost[x]) {
+						if (witnessCost[x] == UNREACHED) touched.add(x);
+						witnessCost[x] = (int) cost;
+						witnessHeap.addOrDecreaseKey(x, cost);
+					}
+				}
+			}
+		}
+
+		private void resetWitnessSearch() {
+			for (int i = 0; i < touched.size; i++) {
+				witnessCost[touched.values[i]] = UNREACHED;
+			}
+			touched.size = 0;
+			witnessHeap.clear();
+		}
+	}
+
+	/**
+	 * The scratch state of a bidirectional upward search.
+	 */
+	private class Query {
+		final int[] forwardCost = new int[size];
+		final int[] backwardCost = new int[size];
+		final int[] forwardParent = new int[size];
+		final int[] forwardParentEdge = new int[size];
+		final int[] backwardParent = new int[size];
+		final int[] backwardParentEdge = new int[size];
+		final IndexedMinHeap forwardHeap = new IndexedMinHeap(size);
+		final IndexedMinHeap backwardHeap = new IndexedMinHeap(size);
+		final IntList touched = new IntList();
+
+		// the shortest travel time found and the intersection where the two searches met
+		int best;
+		int meet;
+
+		Query() {
+			Arrays.fill(forwardCost, UNREACHED);
+			Arrays.fill(backwardCost, UNREACHED);
+		}
+
+		private void reset() {
+			for (int i = 0; i < touched.size; i++) {
+				forwardCost[touched.values[i]] = UNREACHED;
+				backwardCost[touched.values[i]] = UNREACHED;
+			}
+			touched.size = 0;
+			forwardHeap.clear();
+			backwardHeap.clear();
+		}
+
+		/**
+		 * Runs a complete search from start that only follows edges towards higher-ranked
+		 * intersections: forward along outgoing edges, or backward along incoming edges. The
+		 * intersections reached are left in touched, their travel times in forwardCost or
+		 * backwardCost.
+		 */
+		void searchUpward(int start, boolean forward) {
+			reset();
+			int[] cost = forward ? forwardCost : backwardCost;
+			int[] first = forward ? outFirst : inFirst;
+			int[] neighbor = forward ? outHead : inTail;
+			int[] weight = forward ? outWeight : inWeight;
+			IndexedMinHeap heap = forward ? forwardHeap : backwardHeap;
+
+			cost[start] = 0;
+			touched.add(start);
+			heap.add(start, 0);
+			while (!heap.isEmpty()) {
+				int u = heap.poll();
+				int costU = cost[u];
+				for (int e = first[u]; e < first[u + 1]; e++) {
+					int x = neighbor[e];
+					long costX = (long) costU + weight[e];
+					if (costX < cost[x]) {
+						if (cost[x] == UNREACHED) touched.add(x);
+						cost[x] = (int) costX;
+						heap.addOrDecreaseKey(x, costX);
+					}
+				}
+			}
+		}
+
+		void run(int source, int destination) {
+			reset();
+			best = UNREACHED;
+			meet = -1;
+
+			forwardCost[source] = 0;
+			backwardCost[destination] = 0;
+			touched.add(source);
+			touched.add(destination);
+			forwardHeap.add(source, 0);
+			backwardHeap.add(destination, 0);
+
+			while (true) {
+				long forwardMin = forwardHeap.isEmpty() ? UNREACHED : forwardHeap.key(forwardHeap.peek());
+				long backwardMin = backwardHeap.isEmpty() ? UNREACHED : backwardHeap.key(backwardHeap.peek());
+				if (Math.min(forwardMin, backwardMin) >= best) break;
+
+				if (forwardMin <= backwardMin) {
+					int u = forwardHeap.poll();
+					int costU = forwardCost[u];
+					meetAt(u, costU, backwardCost[u]);
+					for (int e = outFirst[u]; e < outFirst[u + 1]; e++) {
+						int x = outHead[e];
+						long cost = (long) costU + outWeight[e];
+						if (cost < forwardCost[x]) {
+							if (forwardCost[x] == UNREACHED && backwardCost[x] == UNREACHED) touched.add(x);
+							forwardCost[x] = (int) cost;
+							forwardParent[x] = u;
+							forwardParentEdge[x] = e;
+							forwardHeap.addOrDecreaseKey(x, cost);
+						}
+					}
+				} else {
+					int v = backwardHeap.poll();
+					int costV = backwardCost[v];
+					meetAt(v, forwardCost[v], costV);
+					for (int e = inFirst[v]; e < inFirst[v + 1]; e++) {
+						int x = inTail[e];
+						long cost = (long) costV + inWeight[e];
+						if (cost < backwardCost[x]) {
+							if (forwardCost[x] == UNREACHED && backwardCost[x] == UNREACHED) touched.add(x);
+							backwardCost[x] = (int) cost;
+							backwardParent[x] = v;
+							backwardParentEdge[x] = e;
+							backwardHeap.addOrDecreaseKey(x, cost);
+						}
+					}
+				}
+			}
+		}
+
+		private void meetAt(int v, int forward, int backward) {
+			if (forward != UNREACHED && backward != UNREACHED && (long) forward + backward < best) {
+				best = forward + backward;
+				meet = v;
+			}
+		}
+	}
+
+	/**
+	 * The edges of one intersection in one direction during preprocessing.
+	 */
+	private static class EdgeList {
+		int[] node = new int[4];
+		int[] weight = new int[4];
+		int[] middle = new int[4];
+		int size;
+
+		int indexOf(int n) {
+			for (int e = 0; e < size; e++) {
+				if (node[e] == n) return e;
+			}
+			return -1;
+		}
+
+		void remove(int n) {
+			int e = indexOf(n);
+			size--;
+			node[e] = node[size];
+			weight[e] = weight[size];
+			middle[e] = middle[size];
+		}
+
+		void add(int n, int w, int m) {
+			if (size == node.length) {
+				node = Arrays.copyOf(node, size * 2);
+				weight = Arrays.copyOf(weight, size * 2);
+				middle = Arrays.copyOf(middle, size * 2);
+			}
+			node[size] = n;
+			weight[size] = w;
+			middle[size] = m;
+			size++;
+		}
+	}
+
+	/**
+	 * A growable list of ints.
+	 */
+	private static class IntList {
+		int[] values = new int[16];
+		int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+}
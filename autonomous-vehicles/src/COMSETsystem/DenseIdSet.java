@@ -0,0 +1,165 @@
+package COMSETsystem;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToIntFunction;
+
+/**
+ * The DenseIdSet class is a set of objects that have dense indices, assigned at creation from 0
+ * up: a bitset by index tells which objects are members, and an array by index holds them. Adding,
+ * removing and testing an object take constant time and allocate nothing once the arrays have
+ * grown to the highest index.
+ *
+ * The members are iterated in increasing order of index, skipping 64 non-members at a time. The
+ * events of the simulator get their indices in the order they are created, which is also the order
+ * of their ids, so a DenseIdSet of events iterates in the same order as a TreeSet ordered by id.
+ *
+ * @param <E> the type of the members
+ */
+public class DenseIdSet<E> implements Iterable<E> {
+
+	// The index of an object
+	private final ToIntFunction<E> indexOf;
+
+	// Bit i of words[i / 64] is set if the object of index i is a member
+	private long[] words = new long[1];
+
+	// The members by index; null at the indices of non-members
+	private Object[] members = new Object[64];
+
+	private int size = 0;
+
+	/**
+	 * Constructs an empty set.
+	 *
+	 * @param indexOf the index of an object, which must not change while it is a member
+	 */
+	public DenseIdSet(ToIntFunction<E> indexOf) {
+		this.indexOf = indexOf;
+	}
+
+	/**
+	 * Adds an object to the set.
+	 *
+	 * @param e the object
+	 * @return true if it was not a member already
+	 */
+	public boolean add(E e) {
+		int index = indexOf.applyAsInt(e);
+		if (index >= members.length) {
+			int capacity = Math.max(index + 1, 2 * members.length);
+			members = Arrays.copyOf(members, capacity);
+			words = Arrays.copyOf(words, (capacity + 63) >>> 6);
+		}
+		long bit = 1L << index;
+		if ((words[index >>> 6] & bit) != 0) {
+			return false;
+		}
+		words[index >>> 6] |= bit;
+		members[index] = e;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes an object from the set.
+	 *
+	 * @param e the object
+	 * @return true if it was a member
+	 */
+	public boolean remove(E e) {
+		int index = indexOf.applyAsInt(e);
+		if (!contains(index)) {
+			return false;
+		}
+		words[index >>> 6] &= ~(1L << index);
+		members[index] = null;
+		size--;
+		return true;
+	}
+
+	/**
+	 * @param e an object
+	 * @return true if the object is a member
+	 */
+	public boolean contains(E e) {
+		return contains(indexOf.applyAsInt(e));
+	}
+
+	private boolean contains(int index) {
+		return index < members.length && (words[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @return the number of members
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the set has no members
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Finds the lowest index of a member from a given index, to scan the members in order with
+	 * {@code for (int i = set.nextIndex(0); i >= 0; i = set.nextIndex(i + 1))}.
+	 *
+	 * @param from the first index to look at
+	 * @return the lowest index of a member that is at least from, or -1 if there is none
+	 */
+	public int nextIndex(int from) {
+		int w = from >>> 6;
+		if (w >= words.length) {
+			return -1;
+		}
+		long word = words[w] & (-1L << from);
+		while (word == 0) {
+			if (++w == words.length) {
+				return -1;
+			}
+			word = words[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * @param index the index of a member
+	 * @return the member
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		return (E) members[index];
+	}
+
+	/**
+	 * Iterates over the members in increasing order of index. The set must not be modified during
+	 * the iteration.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+
+			private int next = nextIndex(0);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public E next() {
+				if (next < 0) {
+					throw new NoSuchElementException();
+				}
+				E e = get(next);
+				next = nextIndex(next + 1);
+				return e;
+			}
+		};
+	}
+}
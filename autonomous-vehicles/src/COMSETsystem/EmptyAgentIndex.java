@@ -0,0 +1,250 @@
+package COMSETsystem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The EmptyAgentIndex class is a uniform grid over the latitude/longitude coordinates of the empty
+ * agents, kept up to date as the agents move, so that the agents close to a location can be found
+ * without scanning all of them.
+ *
+ * The coordinates of an agent are those of its location in an AgentStore, which is where its next
+ * event is triggered. update(agent) must therefore be called whenever an empty agent gets a new location,
+ * and remove(agent) when it stops being empty. Both take constant time: every agent remembers its
+ * cell and its position in the list of the cell.
+ *
+ * A query visits the cells in rings of growing distance around the cell of the query location and
+ * stops as soon as no agent outside the visited rings can be closer than the ones found, so it
+ * costs about the number of agents in the cells that overlap the answer. Distances are Euclidean
+ * distances between coordinates, as in the benefit matrix.
+ */
+public class EmptyAgentIndex {
+
+	// An agent of the index, with the coordinates it is indexed by
+	static class Entry {
+
+		final AgentEvent agent;
+		double latitude;
+		double longitude;
+
+		// The cell holding the entry and the position of the entry in its list
+		long cell;
+		int position;
+
+		// The column of the agent in the current pool, set by CostMatrixBuilder.setAgents
+		int column;
+
+		Entry(AgentEvent agent) {
+			this.agent = agent;
+		}
+	}
+
+	// The store holding the locations of the agents
+	private final AgentStore store;
+
+	// The side of a cell, in degrees
+	private final double cellSize;
+
+	private final Map<AgentEvent, Entry> entries = new HashMap<>();
+	private final Map<Long, List<Entry>> cells = new HashMap<>();
+
+	// The range of the cells that have ever held an agent, which bounds the rings of a query
+	private int minimumX = Integer.MAX_VALUE;
+	private int maximumX = Integer.MIN_VALUE;
+	private int minimumY = Integer.MAX_VALUE;
+	private int maximumY = Integer.MIN_VALUE;
+
+	/**
+	 * Constructs an empty index.
+	 *
+	 * @param store the store holding the locations of the agents
+	 * @param cellSize the side of a cell in degrees
+	 */
+	public EmptyAgentIndex(AgentStore store, double cellSize) {
+		this.store = store;
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Adds an agent to the index at its current location, or moves it there if it is indexed already.
+	 *
+	 * @param agent the agent
+	 */
+	public void update(AgentEvent agent) {
+		Entry entry = entries.get(agent);
+		double latitude = store.latitude(agent.index);
+		double longitude = store.longitude(agent.index);
+		int x = cellOf(latitude);
+		int y = cellOf(longitude);
+		long cell = key(x, y);
+		if (entry == null) {
+			entry = new Entry(agent);
+			entries.put(agent, entry);
+		} else if (entry.cell == cell) {
+			entry.latitude = latitude;
+			entry.longitude = longitude;
+			return;
+		} else {
+			removeFromCell(entry);
+		}
+		entry.latitude = latitude;
+		entry.longitude = longitude;
+		entry.cell = cell;
+		List<Entry> list = cells.computeIfAbsent(cell, c -> new ArrayList<>());
+		entry.position = list.size();
+		list.add(entry);
+		minimumX = Math.min(minimumX, x);
+		maximumX = Math.max(maximumX, x);
+		minimumY = Math.min(minimumY, y);
+		maximumY = Math.max(maximumY, y);
+	}
+
+	/**
+	 * Removes an agent from the index, if it is indexed.
+	 *
+	 * @param agent the agent
+	 */
+	public void remove(AgentEvent agent) {
+		Entry entry = entries.remove(agent);
+		if (entry != null) {
+			removeFromCell(entry);
+		}
+	}
+
+	/**
+	 * @return the number of agents in the index
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Finds the agents within a given distance of a location.
+	 *
+	 * @param latitude the latitude of the location
+	 * @param longitude the longitude of the location
+	 * @param radius the distance in degrees
+	 * @return the agents, in no particular order
+	 */
+	public List<AgentEvent> within(double latitude, double longitude, double radius) {
+		List<AgentEvent> agents = new ArrayList<>();
+		if (entries.isEmpty()) {
+			return agents;
+		}
+		int fromX = Math.max(cellOf(latitude - radius), minimumX);
+		int toX = Math.min(cellOf(latitude + radius), maximumX);
+		int fromY = Math.max(cellOf(longitude - radius), minimumY);
+		int toY = Math.min(cellOf(longitude + radius), maximumY);
+		double squaredRadius = radius * radius;
+		for (int x = fromX; x <= toX; x++) {
+			for (int y = fromY; y <= toY; y++) {
+				List<Entry> list = cells.get(key(x, y));
+				if (list == null) continue;
+				for (Entry entry : list) {
+					double dx = entry.latitude - latitude;
+					double dy = entry.longitude - longitude;
+					if (dx * dx + dy * dy <= squaredRadius) {
+						agents.add(entry.agent);
+					}
+				}
+			}
+		}
+		return agents;
+	}
+
+	/**
+	 * Finds the count agents closest to a location, ordered by distance and then by column, the
+	 * order in which CostMatrixBuilder ranks the agents of a pool. The columns must have been set
+	 * by CostMatrixBuilder.setAgents. Queries only read the index, so they may run concurrently.
+	 *
+	 * @param latitude the latitude of the location
+	 * @param longitude the longitude of the location
+	 * @param count the number of agents to find, at most size()
+	 * @param squaredDistances receives the squared distances of the agents found, from position 0
+	 * @param columns receives the columns of the agents found, from position offset
+	 * @param offset the first position in columns
+	 */
+	void nearest(double latitude, double longitude, int count, double[] squaredDistances, int[] columns, int offset) {
+		if (count == 0) {
+			return;
+		}
+		int centerX = cellOf(latitude);
+		int centerY = cellOf(longitude);
+		int size = 0;
+		for (int ring = 0; ; ring++) {
+			int fromX = centerX - ring;
+			int toX = centerX + ring;
+			int fromY = centerY - ring;
+			int toY = centerY + ring;
+			for (int x = Math.max(fromX, minimumX); x <= Math.min(toX, maximumX); x++) {
+				if (x == fromX || x == toX) {
+					for (int y = Math.max(fromY, minimumY); y <= Math.min(toY, maximumY); y++) {
+						size = visit(x, y, latitude, longitude, count, squaredDistances, columns, offset, size);
+					}
+				} else {
+					// the other cells of the ring are the top and bottom ones
+					if (fromY >= minimumY) {
+						size = visit(x, fromY, latitude, longitude, count, squaredDistances, columns, offset, size);
+					}
+					if (toY <= maximumY) {
+						size = visit(x, toY, latitude, longitude, count, squaredDistances, columns, offset, size);
+					}
+				}
+			}
+			if (fromX <= minimumX && toX >= maximumX && fromY <= minimumY && toY >= maximumY) {
+				break;
+			}
+			if (size == count) {
+				// any agent outside the rings visited is at least as far as their border, up to rounding
+				double border = Math.min(
+						Math.min(latitude - fromX * cellSize, (toX + 1) * cellSize - latitude),
+						Math.min(longitude - fromY * cellSize, (toY + 1) * cellSize - longitude));
+				border *= 1 - 1e-9;
+				if (border > 0 && border * border > squaredDistances[0]) {
+					break;
+				}
+			}
+		}
+		BoundedHeap.sort(squaredDistances, columns, offset, size);
+	}
+
+	// Offers the agents of a cell to the heap of nearest(), returning its new size.
+	private int visit(int x, int y, double latitude, double longitude, int count, double[] squaredDistances, int[] columns, int offset, int size) {
+		List<Entry> list = cells.get(key(x, y));
+		if (list != null) {
+			for (Entry entry : list) {
+				double dx = entry.latitude - latitude;
+				double dy = entry.longitude - longitude;
+				size = BoundedHeap.offer(squaredDistances, columns, offset, size, count, dx * dx + dy * dy, entry.column);
+			}
+		}
+		return size;
+	}
+
+	private void removeFromCell(Entry entry) {
+		List<Entry> list = cells.get(entry.cell);
+		Entry last = list.remove(list.size() - 1);
+		if (last != entry) {
+			last.position = entry.position;
+			list.set(entry.position, last);
+		}
+		if (list.isEmpty()) {
+			cells.remove(entry.cell);
+		}
+	}
+
+	// Looks up the entry of an agent of the current pool.
+	Entry entry(AgentEvent agent) {
+		return entries.get(agent);
+	}
+
+	private int cellOf(double coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xffffffffL);
+	}
+}
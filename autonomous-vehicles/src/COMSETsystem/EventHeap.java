@@ -0,0 +1,106 @@
+package COMSETsystem;
+
+import java.util.Arrays;
+
+/**
+ * The EventHeap class is a binary min-heap of events in the order of Event.compareTo. Every event
+ * in a heap knows the heap and its position in it, which is its handle: removing an event or
+ * checking whether it is in a queue takes O(log n) and O(1) time instead of a scan of the heap.
+ * An event is in at most one heap at a time, and a heap belongs to one EventQueue.
+ */
+class EventHeap {
+
+	// The queue the heap belongs to
+	final EventQueue queue;
+
+	// The events in heap order
+	private Event[] events = new Event[16];
+
+	// The number of events in the heap
+	private int size;
+
+	EventHeap(EventQueue queue) {
+		this.queue = queue;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	Event peek() {
+		return size == 0 ? null : events[0];
+	}
+
+	void add(Event event) {
+		if (size == events.length) {
+			events = Arrays.copyOf(events, 2 * size);
+		}
+		event.heap = this;
+		siftUp(size++, event);
+	}
+
+	Event poll() {
+		if (size == 0) {
+			return null;
+		}
+		Event first = events[0];
+		removeAt(0);
+		return first;
+	}
+
+	/**
+	 * Removes an event of this heap.
+	 *
+	 * @param event an event whose heap is this heap
+	 */
+	void remove(Event event) {
+		removeAt(event.heapPosition);
+	}
+
+	private void removeAt(int position) {
+		Event removed = events[position];
+		removed.heap = null;
+		Event last = events[--size];
+		events[size] = null;
+		if (position < size) {
+			siftDown(position, last);
+			if (events[position] == last) {
+				siftUp(position, last);
+			}
+		}
+	}
+
+	private void siftUp(int position, Event event) {
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			Event parentEvent = events[parent];
+			if (parentEvent.compareTo(event) <= 0) break;
+			place(position, parentEvent);
+			position = parent;
+		}
+		place(position, event);
+	}
+
+	private void siftDown(int position, Event event) {
+		int half = size >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			if (child + 1 < size && events[child + 1].compareTo(events[child]) < 0) {
+				child++;
+			}
+			if (event.compareTo(events[child]) <= 0) break;
+			place(position, events[child]);
+			position = child;
+		}
+		place(position, event);
+	}
+
+	private void place(int position, Event event) {
+		events[position] = event;
+		event.heapPosition = position;
+	}
+}
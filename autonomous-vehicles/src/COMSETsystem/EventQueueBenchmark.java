@@ -0,0 +1,139 @@
+package COMSETsystem;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * The EventQueueBenchmark class measures the time it takes to run the events of a simulated day
+ * through a HeapEventQueue and through a CalendarEventQueue. Resources are introduced at random
+ * times over the day and expire ten minutes later, while every agent moves from intersection to
+ * intersection every 10 to 120 seconds. Every introduced resource is assigned to a random agent,
+ * whose next event is cancelled and rescheduled at the drop-off time, as runAlgo does. With up to
+ * LEGACY_MAXIMUM_AGENTS agents, the original PriorityQueue, which cancels an event by scanning
+ * the queue, is measured as well. All queues are checked to hand out the events in the same order.
+ *
+ * Usage: EventQueueBenchmark agents [resources [seed]]
+ */
+public class EventQueueBenchmark {
+
+	// The simulated time span in seconds, from an arbitrary epoch second
+	private final static long BEGIN = 1_400_000_000L;
+	private final static long END = BEGIN + 24 * 3600;
+
+	// The largest number of agents for which the PriorityQueue is measured
+	private final static int LEGACY_MAXIMUM_AGENTS = 5000;
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: EventQueueBenchmark agents [resources [seed]]");
+			System.exit(1);
+		}
+		int agents = Integer.parseInt(args[0]);
+		int resources = args.length > 1 ? Integer.parseInt(args[1]) : 10 * agents;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+		for (int round = 0; round < 2; round++) {
+			long heapChecksum = run(new HeapEventQueue(), agents, resources, seed, "HeapEventQueue");
+			long calendarChecksum = run(new CalendarEventQueue(), agents, resources, seed, "CalendarEventQueue");
+			long legacyChecksum = heapChecksum;
+			if (agents <= LEGACY_MAXIMUM_AGENTS) {
+				legacyChecksum = run(new LegacyEventQueue(), agents, resources, seed, "PriorityQueue");
+			}
+			if (heapChecksum != calendarChecksum || heapChecksum != legacyChecksum) {
+				System.out.println("The queues handed out the events in different orders.");
+				System.exit(1);
+			}
+		}
+	}
+
+	private static long run(EventQueue queue, int agents, int resources, long seed, String name) {
+		Random random = new Random(seed);
+		BenchmarkEvent[] events = new BenchmarkEvent[agents + resources];
+		for (int i = 0; i < resources; i++) {
+			events[i] = new BenchmarkEvent(BEGIN + (long) (random.nextDouble() * (END - BEGIN)), false);
+		}
+		for (int i = resources; i < events.length; i++) {
+			events[i] = new BenchmarkEvent(BEGIN + random.nextInt(60), true);
+		}
+		// the order in which the events were created decides ties, and is the same for both queues
+		long firstId = events[0].id;
+
+		long start = System.nanoTime();
+		for (BenchmarkEvent event : events) {
+			queue.add(event);
+		}
+		long triggered = 0;
+		long checksum = 0;
+		while (!queue.isEmpty() && queue.peek().time <= END) {
+			BenchmarkEvent event = (BenchmarkEvent) queue.poll();
+			triggered++;
+			checksum = 31 * checksum + (event.id - firstId);
+			if (event.agent) {
+				event.time += 10 + random.nextInt(111);
+				queue.add(event);
+			} else if (!event.expiring) {
+				event.expiring = true;
+				event.time += 600;
+				queue.add(event);
+				BenchmarkEvent assigned = events[resources + random.nextInt(agents)];
+				queue.reschedule(assigned, event.time + random.nextInt(1800));
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.println(name + ": " + triggered + " events in " + nanos / 1000000 + " ms, "
+				+ (nanos / Math.max(1, triggered)) + " ns per event");
+		return checksum;
+	}
+
+	// The original event queue, which scans the heap to remove an event
+	private static class LegacyEventQueue implements EventQueue {
+
+		private final PriorityQueue<Event> heap = new PriorityQueue<>();
+
+		@Override
+		public void add(Event event) {
+			heap.add(event);
+		}
+
+		@Override
+		public Event peek() {
+			return heap.peek();
+		}
+
+		@Override
+		public Event poll() {
+			return heap.poll();
+		}
+
+		@Override
+		public boolean remove(Event event) {
+			return heap.remove(event);
+		}
+
+		@Override
+		public boolean contains(Event event) {
+			return heap.contains(event);
+		}
+
+		@Override
+		public int size() {
+			return heap.size();
+		}
+	}
+
+	private static class BenchmarkEvent extends Event {
+
+		final boolean agent;
+		boolean expiring;
+
+		BenchmarkEvent(long time, boolean agent) {
+			super(time, null);
+			this.agent = agent;
+		}
+
+		@Override
+		Event trigger() {
+			return null;
+		}
+	}
+}
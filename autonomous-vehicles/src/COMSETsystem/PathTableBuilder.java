@@ -0,0 +1,173 @@
+package COMSETsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The PathTableBuilder class computes the all-pair shortest travel-time table of a map by running
+ * one Dijkstra per source intersection. The sources are distributed over a pool of worker threads.
+ * Every worker owns its scratch arrays and an indexed heap with decrease-key, and writes the rows
+ * of its sources into the shared table, so that the workers never synchronize with each other.
+ *
+ * The road network is copied into a compressed adjacency structure of primitive arrays indexed by
+ * path table index. Ties between intersections with the same tentative travel time are broken by
+ * intersection id, so the table is the same regardless of the number of threads.
+ */
+public class PathTableBuilder {
+
+	// The number of intersections
+	final int size;
+
+	// The roads leaving the intersection with path table index i are
+	// roadTo[firstRoad[i]] ... roadTo[firstRoad[i + 1] - 1].
+	final int[] firstRoad;
+
+	// The path table index of the end intersection of each road
+	final int[] roadTo;
+
+	// The travel time of each road in seconds
+	final int[] roadTravelTime;
+
+	// The rank of each intersection when intersections are sorted by id; used to break ties.
+	final int[] rank;
+
+	/**
+	 * Constructor of PathTableBuilder.
+	 *
+	 * @param intersections the intersections of the map; their pathTableIndex must be set
+	 */
+	public PathTableBuilder(Collection<Intersection> intersections) {
+		size = intersections.size();
+		Intersection[] byIndex = new Intersection[size];
+		int numberOfRoads = 0;
+		for (Intersection intersection : intersections) {
+			byIndex[intersection.pathTableIndex] = intersection;
+			numberOfRoads += intersection.roadsMapFrom.size();
+		}
+
+		firstRoad = new int[size + 1];
+		roadTo = new int[numberOfRoads];
+		roadTravelTime = new int[numberOfRoads];
+		int road = 0;
+		for (int i = 0; i < size; i++) {
+			firstRoad[i] = road;
+			for (Road r : byIndex[i].getRoadsFrom()) {
+				roadTo[road] = r.to.pathTableIndex;
+				roadTravelTime[road] = Math.toIntExact(r.travelTime);
+				road++;
+			}
+		}
+		firstRoad[size] = road;
+
+		Integer[] sortedById = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			sortedById[i] = i;
+		}
+		Arrays.sort(sortedById, (a, b) -> Long.compare(byIndex[a].id, byIndex[b].id));
+		rank = new int[size];
+		for (int r = 0; r < size; r++) {
+			rank[sortedById[r]] = r;
+		}
+	}
+
+	/**
+	 * Compute the all-pair shortest travel-time table.
+	 *
+	 * @param numberOfThreads the number of worker threads; 0 or less means one per available processor
+	 * @return the path table
+	 */
+	public PathTable build(int numberOfThreads) {
+		if (numberOfThreads <= 0) {
+			numberOfThreads = Runtime.getRuntime().availableProcessors();
+		}
+		numberOfThreads = Math.max(1, Math.min(numberOfThreads, size));
+
+		PathTable table = new PathTable(size);
+		AtomicInteger nextSource = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < numberOfThreads; t++) {
+				futures.add(executor.submit(() -> {
+					Worker worker = new Worker();
+					int source;
+					while ((source = nextSource.getAndIncrement()) < size) {
+						worker.run(source);
+						table.setRow(source, worker.cost, worker.predecessor);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while computing the path table", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("failed to compute the path table", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return table;
+	}
+
+	/**
+	 * The scratch state of one worker thread.
+	 */
+	class Worker {
+		// Tentative travel times from the current source; PathTable.UNREACHABLE if not reached yet.
+		final int[] cost = new int[size];
+
+		// Predecessors on the shortest paths from the current source.
+		final int[] predecessor = new int[size];
+
+		// Whether the shortest travel time of an intersection is final.
+		final boolean[] settled = new boolean[size];
+
+		// The intersections reached but not settled yet, keyed by (travel time << 32 | rank).
+		final IndexedMinHeap heap = new IndexedMinHeap(size);
+
+		/**
+		 * Run Dijkstra from a source intersection, leaving the result in cost and predecessor.
+		 *
+		 * @param source the path table index of the source intersection
+		 */
+		void run(int source) {
+			Arrays.fill(cost, PathTable.UNREACHABLE);
+			Arrays.fill(predecessor, PathTable.NO_PREDECESSOR);
+			Arrays.fill(settled, false);
+			heap.clear();
+
+			cost[source] = 0;
+			predecessor[source] = source;
+			heap.add(source, rank[source]);
+
+			while (!heap.isEmpty()) {
+				int u = heap.poll();
+				int costU = cost[u];
+				settled[u] = true;
+
+				for (int road = firstRoad[u]; road < firstRoad[u + 1]; road++) {
+					int v = roadTo[road];
+					if (settled[v]) continue;
+					long ncost = (long) costU + roadTravelTime[road];
+					if (cost[v] > ncost) {
+						if (ncost >= PathTable.UNREACHABLE) {
+							throw new IllegalStateException("travel time does not fit in the path table: " + ncost);
+						}
+						cost[v] = (int) ncost;
+						predecessor[v] = u;
+						heap.addOrDecreaseKey(v, ncost << 32 | rank[v]);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package COMSETsystem;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The PathTableCache class keeps all-pair path tables in a directory on disk so that a map does
+ * not have to be pre-computed again when the simulator is restarted with the same inputs. A table
+ * is keyed by the MapFingerprint of the map JSON file, the bounding polygon KML file and the speed
+ * reduction, which are everything the table depends on.
+ *
+ * Cached tables are memory-mapped read-only, so loading one takes no time beyond the page faults
+ * and several simulator processes on the same machine share its pages. New tables are written to
+ * a temporary file that is renamed into place, so a reader never sees a partially written table.
+ */
+public class PathTableCache {
+
+	// Bump whenever the way the table is computed changes, so that old cache files are not used.
+	private final static int VERSION = 1;
+
+	// The directory holding the cached tables
+	private final Path directory;
+
+	// The cache file of the table for the given inputs
+	private final Path file;
+
+	/**
+	 * Constructor of PathTableCache.
+	 *
+	 * @param directory the directory holding the cached tables; created when a table is stored
+	 * @param mapFingerprint the MapFingerprint of the inputs of the map
+	 */
+	public PathTableCache(String directory, String mapFingerprint) {
+		this.directory = Paths.get(directory);
+		this.file = this.directory.resolve("path-table-v" + VERSION + "-" + mapFingerprint + ".bin");
+	}
+
+	/**
+	 * @return the cache file of the table for the inputs given to the constructor
+	 */
+	public Path file() {
+		return file;
+	}
+
+	/**
+	 * Maps the cached table, if there is one.
+	 *
+	 * @param size the number of intersections of the map
+	 * @return the table, or null if no complete table of that size is cached
+	 * @throws IOException if the cache file exists but cannot be read
+	 */
+	public PathTable load(int size) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		// The mapping stays valid after the channel is closed.
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return PathTable.mapFrom(channel, size);
+		}
+	}
+
+	/**
+	 * Writes a table to the cache, replacing any table cached for the same inputs.
+	 *
+	 * @param pathTable the table
+	 * @throws IOException if the table cannot be written
+	 */
+	public void store(PathTable pathTable) throws IOException {
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				pathTable.writeTo(channel);
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
@@ -36,6 +36,27 @@ public class Road implements Comparable<Road> {
 		links = new ArrayList<>();
 	}
 	
+	/**
+	 * Creating a road with a given id, used when a map is read back from a compiled map file.
+	 * The road and beginTime of the links are not modified.
+	 * @param id the id of the road
+	 * @param from the start intersection
+	 * @param to the end intersection
+	 * @param length the length of the road in meters
+	 * @param travelTime the travel time of the road in seconds
+	 * @param links a list of links
+	 */
+	public Road(long id, Intersection from, Intersection to, double length, long travelTime, ArrayList<Link> links) {
+		this.id = id;
+		// keep the ids of roads created afterwards unique
+		maxId = Math.max(maxId, id + 1);
+		this.length = length;
+		this.travelTime = travelTime;
+		this.from = from;
+		this.to = to;
+		this.links = links;
+	}
+
 	/**
 	 * Creating a copy of a road
 	 * @param road the road to copy
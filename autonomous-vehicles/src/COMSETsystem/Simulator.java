@@ -2,10 +2,13 @@ package COMSETsystem;
 
 import MapCreation.*;
 
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import UserExamples.Hungarian;
+import UserExamples.JonkerVolgenant;
+import UserExamples.SparseAssignment;
 import me.tongfei.progressbar.*;
 
 
@@ -18,7 +21,7 @@ import static java.lang.Math.min;
  * The Simulator class defines the major steps of the simulation. It is
  * responsible for loading the map, creating the necessary number of agents,
  * creating a respective AgentEvent for each of them such that they are added
- * to the events PriorityQueue. Furthermore it is also responsible for dealing
+ * to the events EventQueue. Furthermore it is also responsible for dealing
  * with the arrival of resources, map matching them to the map, and assigning
  * them to agents. This produces the score according to the scoring rules.
  * <p>
@@ -26,11 +29,32 @@ import static java.lang.Math.min;
  * corresponds to when something will be empty and thus needs some
  * interaction (triggering). There's an event corresponding to every existent
  * Agent and for every resource that hasn't arrived yet. All of this events are
- * in a PriorityQueue called events which is ordered by their time in an
+ * in an EventQueue called events which is ordered by their time in an
  * increasing way.
  */
 public class Simulator {
 
+	// Routing engine answering travel-time queries from an all-pair path table.
+	public final static String ROUTING_ENGINE_TABLE = "table";
+
+	// Routing engine answering travel-time queries with a contraction hierarchy.
+	public final static String ROUTING_ENGINE_CONTRACTION_HIERARCHY = "ch";
+
+	// Event queue in the form of a binary heap, see HeapEventQueue.
+	public final static String EVENT_QUEUE_HEAP = "heap";
+
+	// Event queue in the form of a timing wheel with one bucket per second, see CalendarEventQueue.
+	public final static String EVENT_QUEUE_CALENDAR = "calendar";
+
+	// Assignment solver using the Munkres (Hungarian) algorithm of UserExamples.Hungarian.
+	public final static String ASSIGNMENT_SOLVER_HUNGARIAN = "hungarian";
+
+	// Assignment solver using the shortest augmenting path algorithm of UserExamples.JonkerVolgenant.
+	public final static String ASSIGNMENT_SOLVER_JONKER_VOLGENANT = "jv";
+
+	// Assignment solver using UserExamples.SparseAssignment on the nearest candidate agents of every resource.
+	public final static String ASSIGNMENT_SOLVER_SPARSE = "sparse";
+
 	//list of hubs
 	List<Intersection> hubs;
 
@@ -45,13 +69,26 @@ public class Simulator {
 	protected CityMap mapForAgents;
 
 	// The event queue.
-	protected PriorityQueue<Event> events = new PriorityQueue<>();
+	protected EventQueue events = new HeapEventQueue();
+
+	// The set of empty agents, by index in agentStore.
+	protected DenseIdSet<AgentEvent> emptyAgents = new DenseIdSet<>(agent -> agent.index);
+
+	// The state of all agents in columns, scanned by the pools and the statistics.
+	protected AgentStore agentStore;
 
-	// The set of empty agents.
-	protected TreeSet<AgentEvent> emptyAgents = new TreeSet<>(new AgentEventComparator());
+	// The grid index of emptyAgents by location, kept with ASSIGNMENT_SOLVER_SPARSE to find the candidates of a
+	// resource; null otherwise.
+	protected EmptyAgentIndex emptyAgentIndex;
+
+	// The side in degrees of a cell of emptyAgentIndex, about 500 meters.
+	public final static double EMPTY_AGENT_CELL_SIZE = 0.005;
 
 	// The set of resources that with no agent assigned to it yet.
-	protected TreeSet<ResourceEvent> waitingResources = new TreeSet<>(new ResourceEventComparator());
+	protected DenseIdSet<ResourceEvent> waitingResources = new DenseIdSet<>(resource -> resource.index);
+
+	// The number of ResourceEvents created, which is the index of the next one.
+	int numberOfResourceEvents = 0;
 
 	// The maximum life time of a resource in seconds. This is a parameter of the simulator.
 	public long ResourceMaximumLifeTime;
@@ -66,6 +103,40 @@ public class Simulator {
 	// Full path to a KML defining the bounding polygon to crop the map
 	protected String boundingPolygonKMLFile;
 
+	// The number of threads used to pre-compute the all-pair travel times; 0 means one per available processor.
+	protected int pathTableThreads = 0;
+
+	// The routing engine answering travel-time queries: ROUTING_ENGINE_TABLE or ROUTING_ENGINE_CONTRACTION_HIERARCHY.
+	protected String routingEngine = ROUTING_ENGINE_TABLE;
+
+	// The event queue of the simulation: EVENT_QUEUE_HEAP or EVENT_QUEUE_CALENDAR.
+	protected String eventQueue = EVENT_QUEUE_CALENDAR;
+
+	// The directory in which compiled maps and pre-computed travel-time tables are cached; null disables the cache.
+	protected String cacheDirectory = "cache";
+
+	// The number of threads used to build the cost matrix of a pool; 0 means one per available processor.
+	protected int costMatrixThreads = 0;
+
+	// The number of threads used to map match the resources; 0 means one per available processor.
+	protected int mapMatchThreads = 0;
+
+	// The number of threads used to parse the resource dataset file; 0 means one per available processor.
+	protected int parseThreads = 0;
+
+	// The side in meters of the cells of the snap cache used to map match the resources; 0 means no cache.
+	protected double snapCacheResolution = 0;
+
+	// The solver assigning resources to agents in every pool: ASSIGNMENT_SOLVER_HUNGARIAN, ASSIGNMENT_SOLVER_JONKER_VOLGENANT
+	// or ASSIGNMENT_SOLVER_SPARSE.
+	protected String assignmentSolver = ASSIGNMENT_SOLVER_JONKER_VOLGENANT;
+
+	// The number of nearest agents that are candidates for a resource with ASSIGNMENT_SOLVER_SPARSE.
+	protected int assignmentCandidates = 32;
+
+	// The longest approach time in seconds of a candidate agent with ASSIGNMENT_SOLVER_SPARSE; 0 means no limit.
+	protected long maximumApproachTime = 0;
+
 	// The simulation end time is the expiration time of the last resource.
 	protected long simulationEndTime;
 
@@ -107,7 +178,12 @@ public class Simulator {
 	// A class that extends BaseAgent and implements a search routing strategy
 	protected final Class<? extends BaseAgent> agentClass;
 
-	public ArrayList<ArrayList<Double>> costMatrix = new ArrayList<ArrayList<Double>>();
+	// The benefit matrix of the current pool, resources by agents
+	public double[][] costMatrix = new double[0][];
+
+	// The candidate agents of every resource of the current pool, with ASSIGNMENT_SOLVER_SPARSE instead of costMatrix
+	private CostMatrixBuilder.Candidates candidates;
+	private CostMatrixBuilder costMatrixBuilder;
 	public ArrayList<AgentEvent> agentMatrix = new ArrayList<AgentEvent>();
 	public ArrayList<ResourceEvent> resourceMatrix = new ArrayList<ResourceEvent>();
 
@@ -117,6 +193,7 @@ public class Simulator {
 	public long lastResourceTime;
 	public long endPoolTime;
 	public long triggerTime;
+	public long triggerId;
 	public int count=0;
 
 	public ArrayList<Double> poolBenefits = new ArrayList<Double>();
@@ -159,25 +236,70 @@ public class Simulator {
 
 		this.totalAgents = totalAgents;
 
+		this.agentStore = new AgentStore((int) this.totalAgents);
+
 		this.boundingPolygonKMLFile = boundingPolygonKMLFile;
 
 		this.ResourceMaximumLifeTime = maximumLifeTime;
 
 		this.resourceFile = resourceFile;
 
-		MapCreator creator = new MapCreator(this.mapJSONFile, this.boundingPolygonKMLFile, speedReduction);
-		System.out.println("Creating the map...");
+		this.costMatrixBuilder = new CostMatrixBuilder(costMatrixThreads);
+		if (ASSIGNMENT_SOLVER_SPARSE.equals(assignmentSolver)) {
+			emptyAgentIndex = new EmptyAgentIndex(agentStore, EMPTY_AGENT_CELL_SIZE);
+			costMatrixBuilder.setAgentIndex(emptyAgentIndex);
+		}
+
+		// Maps and travel-time tables are cached under the fingerprint of the map inputs.
+		String mapFingerprint = null;
+		if (cacheDirectory != null) {
+			try {
+				mapFingerprint = MapFingerprint.of(mapJSONFile, boundingPolygonKMLFile, speedReduction);
+			} catch (IOException e) {
+				System.out.println("Cannot fingerprint the map inputs: " + e.getMessage());
+			}
+		}
+
+		CompiledMap compiledMap = null;
+		if (mapFingerprint != null) {
+			try {
+				compiledMap = CompiledMap.load(CompiledMap.file(cacheDirectory, mapFingerprint));
+			} catch (IOException e) {
+				System.out.println("Cannot read the compiled map: " + e.getMessage());
+			}
+		}
+		if (compiledMap != null) {
+			System.out.println("Loaded the map from " + CompiledMap.file(cacheDirectory, mapFingerprint));
+			MapCreator.loadBoundingPolygon(this.boundingPolygonKMLFile);
+			this.hubs = compiledMap.hubs;
+			map = compiledMap.map;
+		} else {
+			MapCreator creator = new MapCreator(this.mapJSONFile, this.boundingPolygonKMLFile, speedReduction);
+			System.out.println("Creating the map...");
 
-		creator.createMap();
+			creator.createMap();
 
-		this.hubs = creator.hubs;
+			this.hubs = creator.hubs;
 
-		// Output the map
-		map = creator.outputCityMap();
+			// Output the map
+			map = creator.outputCityMap();
 
-		// Pre-compute shortest travel times between all pairs of intersections.
-		System.out.println("Pre-computing all pair travel times...");
-		map.calcTravelTimes();
+			if (mapFingerprint != null) {
+				try {
+					CompiledMap.store(CompiledMap.file(cacheDirectory, mapFingerprint), creator);
+				} catch (IOException e) {
+					System.out.println("Cannot write the compiled map: " + e.getMessage());
+				}
+			}
+		}
+
+		// Prepare the travel-time queries of the map.
+		if (ROUTING_ENGINE_CONTRACTION_HIERARCHY.equals(routingEngine)) {
+			System.out.println("Building the contraction hierarchy...");
+			map.calcContractionHierarchy();
+		} else {
+			loadOrCalcPathTable(mapFingerprint);
+		}
 
 		// Make a map copy for agents to use so that an agent cannot modify the map used by
 		// the simulator
@@ -201,7 +323,43 @@ public class Simulator {
 		agents = mapWD.placeAgentsRandomly(this);
 
 		// Initialize the event queue.
-		events = mapWD.getEvents();
+		events = EVENT_QUEUE_HEAP.equals(eventQueue) ? new HeapEventQueue() : new CalendarEventQueue();
+		for (Event event : mapWD.getEvents()) {
+			events.add(event);
+		}
+	}
+
+	/**
+	 * Pre-compute shortest travel times between all pairs of intersections, unless they
+	 * have been cached for the same map, bounding polygon and speed reduction.
+	 *
+	 * @param mapFingerprint the MapFingerprint of the map inputs; null if the cache is disabled
+	 */
+	private void loadOrCalcPathTable(String mapFingerprint) {
+		PathTableCache pathTableCache = null;
+		PathTable pathTable = null;
+		if (mapFingerprint != null) {
+			pathTableCache = new PathTableCache(cacheDirectory, mapFingerprint);
+			try {
+				pathTable = pathTableCache.load(map.intersections().size());
+			} catch (IOException e) {
+				System.out.println("Cannot read the travel time cache: " + e.getMessage());
+			}
+		}
+		if (pathTable != null) {
+			System.out.println("Loaded all pair travel times from " + pathTableCache.file());
+			map.setPathTable(pathTable);
+		} else {
+			System.out.println("Pre-computing all pair travel times...");
+			map.calcTravelTimes(pathTableThreads);
+			if (pathTableCache != null && PathTable.fitsInFile(map.pathTable().size())) {
+				try {
+					pathTableCache.store(map.pathTable());
+				} catch (IOException e) {
+					System.out.println("Cannot write the travel time cache: " + e.getMessage());
+				}
+			}
+		}
 	}
 
 	/**
@@ -236,6 +394,7 @@ public class Simulator {
 				pb.stepTo((long)(((float)(toTrigger.time - beginTime)) / (simulationEndTime - beginTime) * 100.0));
 
 				triggerTime = toTrigger.time;
+				triggerId = toTrigger.id;
 
 				if (toTrigger.getClass() == ResourceEvent.class &&
 						(toTrigger.time>=initialPoolTime)){
@@ -244,9 +403,9 @@ public class Simulator {
 						continue;
 					}
 					long startPoolTime = System.nanoTime();
+					advanceEmptyAgents(triggerTime, triggerId);
 					getCostMatrix();
 					runAlgo(triggerTime);
-					costMatrix.clear();
 					agentMatrix.clear();
 					resourceMatrix.clear();
 					initialPoolTime = initialPoolTime + TimeUnit.SECONDS.toSeconds(30); // 8:04
@@ -261,6 +420,16 @@ public class Simulator {
 			}
 			if(!resourceMatrix.isEmpty()){
 				System.out.println("In the last loop");
+				// the agents on committed routes reach intersections until simulationEndTime without events;
+				// the last of them is the last event triggered, which the agents have passed
+				for (AgentEvent agent : emptyAgents) {
+					long roadEnd = agent.lastRoadEndBy(simulationEndTime);
+					if (roadEnd > triggerTime || (roadEnd == triggerTime && agent.id > triggerId)) {
+						triggerTime = roadEnd;
+						triggerId = agent.id;
+					}
+				}
+				advanceEmptyAgents(triggerTime, triggerId + 1);
 				getCostMatrix();
 				runAlgo(triggerTime);
 			}
@@ -282,134 +451,208 @@ public class Simulator {
 		score.end();
 	}
 
+	/**
+	 * Brings the locations of the empty agents that drive committed routes up to date at the moment
+	 * an event is triggered, see AgentEvent.advance.
+	 *
+	 * @param time the time of the event
+	 * @param id the id of the event
+	 */
+	private void advanceEmptyAgents(long time, long id) {
+		for (int a = emptyAgents.nextIndex(0); a >= 0; a = emptyAgents.nextIndex(a + 1)) {
+			AgentEvent agent = emptyAgents.get(a);
+			if (agent.advance(time, id) && emptyAgentIndex != null) {
+				emptyAgentIndex.update(agent);
+			}
+		}
+	}
+
 	public void getCostMatrix(){
 
 		System.out.println("# of resources: " + resourceMatrix.size());
 		System.out.println("# of agents: " + emptyAgents.size());
 
+		costMatrixBuilder.setResources(resourceMatrix);
+		costMatrixBuilder.setAgents(emptyAgents, agentStore);
 
-		for (ResourceEvent resource: resourceMatrix){
-
-			ArrayList<Double> benefitList = new ArrayList<>();
-			double travelDist = MapWithData.distance(resource.pickupLoc.toLatLon()[0], resource.pickupLoc.toLatLon()[1],
-					resource.dropoffLoc.toLatLon()[0], resource.dropoffLoc.toLatLon()[1]);
-			for (AgentEvent agent : emptyAgents) {
-				double dist = MapWithData.distance(agent.loc.toLatLon()[0], agent.loc.toLatLon()[1],
-						resource.pickupLoc.toLatLon()[0], resource.pickupLoc.toLatLon()[1]);
-
-				double benefit = travelDist / (travelDist + dist);
+		for (AgentEvent agent : emptyAgents) {
+			agentMatrix.add(agent);
+		}
 
-				benefitList.add(benefit);
+		if (ASSIGNMENT_SOLVER_SPARSE.equals(assignmentSolver)) {
+			candidates = costMatrixBuilder.buildCandidates(assignmentCandidates);
+			if (maximumApproachTime > 0) {
+				candidates = withinApproachTime(candidates);
 			}
-			costMatrix.add(benefitList);
+		} else {
+			costMatrix = costMatrixBuilder.build();
 		}
 
-		for (AgentEvent agent: emptyAgents){
-			agentMatrix.add(agent);
+	}
+	/**
+	 * Drops the candidate agents whose travel time to the pickup location of the resource exceeds
+	 * maximumApproachTime.
+	 *
+	 * @param candidates the candidates of every resource of the pool
+	 * @return the remaining candidates
+	 */
+	private CostMatrixBuilder.Candidates withinApproachTime(CostMatrixBuilder.Candidates candidates) {
+		int[] first = new int[candidates.first.length];
+		int[] agents = new int[candidates.agents.length];
+		double[] benefits = new double[candidates.benefits.length];
+		int size = 0;
+		for (int r = 0; r + 1 < first.length; r++) {
+			first[r] = size;
+			LocationOnRoad pickupLoc = resourceMatrix.get(r).pickupLoc;
+			for (int e = candidates.first[r]; e < candidates.first[r + 1]; e++) {
+				if (map.travelTimeBetween(agentMatrix.get(candidates.agents[e]).loc(), pickupLoc) <= maximumApproachTime) {
+					agents[size] = candidates.agents[e];
+					benefits[size] = candidates.benefits[e];
+					size++;
+				}
+			}
 		}
-
+		first[first.length - 1] = size;
+		return new CostMatrixBuilder.Candidates(first, agents, benefits);
 	}
-	public void runAlgo(long time){
-
 
-		double[][] temp = costMatrix.stream().map(u->u.stream().mapToDouble(i->i).toArray()).toArray(double[][]::new);
+	public void runAlgo(long time){
 
-		double[][] copy1 = Arrays.stream(temp).map(double[]::clone).toArray(double[][]::new);
+		// the assigned resources and agents, by index in resourceMatrix and agentMatrix, in the order
+		// in which they are processed, and the resources that remain unassigned
+		int[][] pairs;
+		double[] pairBenefits;
+		List<ResourceEvent> unassignedResources = new ArrayList<>();
+
+		if (ASSIGNMENT_SOLVER_SPARSE.equals(assignmentSolver)) {
+			int[] agentOfResource = SparseAssignment.maximize(agentMatrix.size(), candidates.first, candidates.agents, candidates.benefits);
+			List<int[]> assigned = new ArrayList<>();
+			List<Double> assignedBenefits = new ArrayList<>();
+			for (int r = 0; r < agentOfResource.length; r++) {
+				if (agentOfResource[r] == JonkerVolgenant.UNASSIGNED) {
+					continue;
+				}
+				assigned.add(new int[] {r, agentOfResource[r]});
+				for (int e = candidates.first[r]; e < candidates.first[r + 1]; e++) {
+					if (candidates.agents[e] == agentOfResource[r]) {
+						assignedBenefits.add(candidates.benefits[e]);
+						break;
+					}
+				}
+			}
+			pairs = assigned.toArray(new int[0][]);
+			pairBenefits = assignedBenefits.stream().mapToDouble(Double::doubleValue).toArray();
+		} else {
+			double[][] temp = costMatrix;
+			boolean transposed = temp.length > temp[0].length;
+			if (ASSIGNMENT_SOLVER_HUNGARIAN.equals(assignmentSolver)) {
+				// hgAlgorithm modifies the matrix it is given
+				double[][] copy1 = new double[temp.length][];
+				for (int i = 0; i < temp.length; i++) {
+					copy1[i] = temp[i].clone();
+				}
+				int[][] assignment = Hungarian.hgAlgorithm(copy1, "max");
+				// with more resources than agents, hgAlgorithm lists {agent, resource} pairs
+				pairs = new int[min(temp.length, temp[0].length)][];
+				for (int i = 0; i < pairs.length; i++) {
+					pairs[i] = transposed ? new int[] {assignment[i][1], assignment[i][0]} : assignment[i];
+				}
+			} else {
+				pairs = assignmentPairs(temp, JonkerVolgenant.maximize(temp));
+			}
+			pairBenefits = new double[pairs.length];
+			for (int i = 0; i < pairs.length; i++) {
+				pairBenefits[i] = temp[pairs[i][0]][pairs[i][1]];
+			}
+		}
 
-		int[][] assignment = Hungarian.hgAlgorithm(copy1, "max");
+		if (ASSIGNMENT_SOLVER_HUNGARIAN.equals(assignmentSolver)) {
+			// the original simulator let the resources beyond the number of agents expire, whether hgAlgorithm
+			// assigned them or not; this solver keeps doing so, to reproduce its output
+			if (resourceMatrix.size() > pairs.length) {
+				unassignedResources = resourceMatrix.subList(pairs.length, resourceMatrix.size());
+			}
+		} else {
+			// the resources that no pair covers are not served in this pool
+			boolean[] assigned = new boolean[resourceMatrix.size()];
+			for (int[] pair : pairs) {
+				assigned[pair[0]] = true;
+			}
+			for (int r = 0; r < assigned.length; r++) {
+				if (!assigned[r]) {
+					unassignedResources.add(resourceMatrix.get(r));
+				}
+			}
+		}
 
 		double sum = 0;
 
-		if (assignment.length > 0) {
+		if (!resourceMatrix.isEmpty()) {
 			long earliest = Long.MAX_VALUE;
 			LocationOnRoad bestAgentLocationOnRoad = null;
-			ResourceEvent currentResource;
-			AgentEvent bestAgent;
-			int agentIndex;
-			int resourceIndex;
-
-			for (int i = 0; i < assignment.length; i++) {
-
-				if (temp.length > temp[0].length){
-					currentResource = resourceMatrix.get(assignment[i][1]);
-					bestAgent = agentMatrix.get(assignment[i][0]);
-					resourceIndex = assignment[i][1];
-					agentIndex = assignment[i][0];
-				}
-				else{
-					currentResource = resourceMatrix.get(assignment[i][0]);
-					bestAgent = agentMatrix.get(assignment[i][1]);
-					resourceIndex = assignment[i][0];
-					agentIndex = assignment[i][1];
-				}
 
-				if (i< min(costMatrix.get(0).size(), costMatrix.size())){
-
-					sum = sum + costMatrix.get(resourceIndex).get(agentIndex);
-					long travelTimeToEndIntersection = bestAgent.time - time;
-
-					long travelTimeFromStartIntersection = bestAgent.loc.road.travelTime - travelTimeToEndIntersection;
-					LocationOnRoad agentLocationOnRoad = new LocationOnRoad(bestAgent.loc.road, travelTimeFromStartIntersection);
-					long travelTime = map.travelTimeBetween(agentLocationOnRoad, currentResource.pickupLoc);
-					long arriveTime = travelTime + time;
-					if (arriveTime < earliest) {
-						earliest = arriveTime;
-						bestAgentLocationOnRoad = agentLocationOnRoad;
-					}
-
-					long cruiseTime = time - bestAgent.startSearchTime;
-					long approachTime = earliest - time;
-					long searchTime = cruiseTime + approachTime;
-					long waitTime = earliest - currentResource.availableTime;
+			for (int i = 0; i < pairs.length; i++) {
+				ResourceEvent currentResource = resourceMatrix.get(pairs[i][0]);
+				AgentEvent bestAgent = agentMatrix.get(pairs[i][1]);
+
+				sum = sum + pairBenefits[i];
+				long travelTimeToEndIntersection = bestAgent.locTime() - time;
+
+				Road agentRoad = agentStore.road(bestAgent.index);
+				long travelTimeFromStartIntersection = agentRoad.travelTime - travelTimeToEndIntersection;
+				LocationOnRoad agentLocationOnRoad = new LocationOnRoad(agentRoad, travelTimeFromStartIntersection);
+				long travelTime = map.travelTimeBetween(agentLocationOnRoad, currentResource.pickupLoc);
+				long arriveTime = travelTime + time;
+				if (arriveTime < earliest) {
+					earliest = arriveTime;
+					bestAgentLocationOnRoad = agentLocationOnRoad;
+				}
 
-					totalAgentCruiseTime += cruiseTime;
-					totalAgentApproachTime += approachTime;
-					totalAgentSearchTime += searchTime;
-					totalResourceWaitTime += waitTime;
-					totalResourceTripTime += currentResource.tripTime;
-					totalAssignments++;
+				long cruiseTime = time - bestAgent.startSearchTime();
+				long approachTime = earliest - time;
+				long searchTime = cruiseTime + approachTime;
+				long waitTime = earliest - currentResource.availableTime;
+
+				totalAgentCruiseTime += cruiseTime;
+				totalAgentApproachTime += approachTime;
+				totalAgentSearchTime += searchTime;
+				totalResourceWaitTime += waitTime;
+				totalResourceTripTime += currentResource.tripTime;
+				totalAssignments++;
+
+				emptyAgents.remove(bestAgent);
+				if (emptyAgentIndex != null) {
+					emptyAgentIndex.remove(bestAgent);
+				}
+				events.remove(bestAgent);
 
-					emptyAgents.remove(bestAgent);
-					events.remove(bestAgent);
+				waitingResources.remove(currentResource);
+				events.remove(currentResource);
 
-					waitingResources.remove(currentResource);
-					events.remove(currentResource);
+				TreeMap<Long,LocationOnRoad> dropOffHubTime = getDropOffHubTime(currentResource.dropoffLoc,hubsLocationOnRoad);
+				LocationOnRoad nearestHub = dropOffHubTime.firstEntry().getValue();
 
-					TreeMap<Long,LocationOnRoad> dropOffHubTime = getDropOffHubTime(currentResource.dropoffLoc,hubsLocationOnRoad);
-					LocationOnRoad nearestHub = dropOffHubTime.firstEntry().getValue();
+				bestAgent.assignedTo(bestAgentLocationOnRoad,
+						time, currentResource.id, currentResource.pickupLoc, currentResource.dropoffLoc);
 
-					bestAgent.assignedTo(bestAgentLocationOnRoad,
-							time, currentResource.id, currentResource.pickupLoc, currentResource.dropoffLoc);
+				if(dropOffHubTime.firstKey()<60){
+					bestAgent.setEvent(earliest + currentResource.tripTime+dropOffHubTime.firstKey(),
+							nearestHub, AgentEvent.DROPPING_OFF);
+				}else
+					bestAgent.setEvent(earliest + currentResource.tripTime,
+							currentResource.dropoffLoc, AgentEvent.DROPPING_OFF);
 
-					if(dropOffHubTime.firstKey()<60){
-						bestAgent.setEvent(earliest + currentResource.tripTime+dropOffHubTime.firstKey(),
-								nearestHub, AgentEvent.DROPPING_OFF);
-					}else
-						bestAgent.setEvent(earliest + currentResource.tripTime,
-								currentResource.dropoffLoc, AgentEvent.DROPPING_OFF);
+				events.add(bestAgent);
+			}
 
-					events.add(bestAgent);
-				}
-				else if (costMatrix.get(0).size() > costMatrix.size()) {
-					if (!emptyAgents.contains(bestAgent)){
-						emptyAgents.add(bestAgent);
-					}
-				}
-				else {
+			if (!unassignedResources.isEmpty()) {
+				count++;
+				for (ResourceEvent resourceEvent : unassignedResources){
 					count++;
-					List<ResourceEvent> tempMatrix = resourceMatrix.subList(i, resourceMatrix.size());
-
-					for (ResourceEvent resourceEvent : tempMatrix){
-						count++;
-						waitingResources.remove(resourceEvent);
-						events.remove(resourceEvent);
-						resourceEvent.time += ResourceMaximumLifeTime;
-						resourceEvent.eventCause = ResourceEvent.EXPIRED; //EXPIRED
-						waitingResources.add(resourceEvent);
-						events.add(resourceEvent);
-					}
-					break;
-
+					waitingResources.remove(resourceEvent);
+					resourceEvent.eventCause = ResourceEvent.EXPIRED; //EXPIRED
+					waitingResources.add(resourceEvent);
+					events.reschedule(resourceEvent, resourceEvent.time + ResourceMaximumLifeTime);
 				}
 			}
 			poolBenefits.add(sum);
@@ -421,6 +664,27 @@ public class Simulator {
 
 
 	}
+	/**
+	 * Lists the pairs of an assignment of resources to agents in the order in which
+	 * Hungarian.hgAlgorithm lists them: by resource if there are no more resources than agents,
+	 * by agent otherwise.
+	 *
+	 * @param matrix the cost matrix, resources by agents
+	 * @param agentOfResource for every resource, the agent assigned to it, or JonkerVolgenant.UNASSIGNED
+	 * @return the {resource, agent} pairs
+	 */
+	private static int[][] assignmentPairs(double[][] matrix, int[] agentOfResource) {
+		int[][] pairs = new int[min(matrix.length, matrix[0].length)][];
+		boolean transposed = matrix.length > matrix[0].length;
+		for (int resource = 0; resource < agentOfResource.length; resource++) {
+			int agent = agentOfResource[resource];
+			if (agent != JonkerVolgenant.UNASSIGNED) {
+				pairs[transposed ? agent : resource] = new int[] {resource, agent};
+			}
+		}
+		return pairs;
+	}
+
 	/**
 	 * This class is used to give a performance report and the score. It prints
 	 * the total running time of the simulation, the used memory and the score.
@@ -533,8 +797,8 @@ public class Simulator {
 				// These agents are in search status and therefore the amount of time they spend on
 				// searching until the end of the simulation should be counted toward the total search time.
 				long totalRemainTime = 0;
-				for (AgentEvent ae: emptyAgents) {
-					totalRemainTime += (simulationEndTime - ae.startSearchTime);
+				for (int a = emptyAgents.nextIndex(0); a >= 0; a = emptyAgents.nextIndex(a + 1)) {
+					totalRemainTime += (simulationEndTime - agentStore.searchStartTime(a));
 				}
 
 				sb.append("average agent search time: " + Math.floorDiv(totalAgentSearchTime + totalRemainTime, (totalAssignments + emptyAgents.size())) + " seconds \n");
@@ -572,59 +836,149 @@ public class Simulator {
 	}
 
 	/**
-	 * Compares agent events
+	 * Retrieves the total number of agents
+	 *
+	 * @return {@code totalAgents }
 	 */
-	class AgentEventComparator implements Comparator<AgentEvent> {
+	public long totalAgents() {
+		return totalAgents;
+	}
 
-		/**
-		 * Checks if two agentEvents are the same by checking their ids.
-		 *
-		 * @param a1 The first agent event
-		 * @param a2 The second agent event
-		 * @return returns 0 if the two agent events are the same, 1 if the id of
-		 * the first agent event is bigger than the id of the second agent event,
-		 * -1 otherwise
-		 */
-		public int compare(AgentEvent a1, AgentEvent a2) {
-			if (a1.id == a2.id)
-				return 0;
-			else if (a1.id > a2.id)
-				return 1;
-			else
-				return -1;
-		}
+	/**
+	 * Sets the number of threads used to pre-compute the all-pair travel times.
+	 * Must be called before configure().
+	 *
+	 * @param pathTableThreads the number of threads; 0 means one per available processor
+	 */
+	public void setPathTableThreads(int pathTableThreads) {
+		this.pathTableThreads = pathTableThreads;
 	}
 
 	/**
-	 * Compares resource events
+	 * Sets the number of threads used to build the cost matrix of a pool. The matrix does not
+	 * depend on the number of threads. Must be called before configure().
+	 *
+	 * @param costMatrixThreads the number of threads; 0 means one per available processor
 	 */
-	class ResourceEventComparator implements Comparator<ResourceEvent> {
-		/**
-		 * Checks if two resourceEvents are the same by checking their ids.
-		 *
-		 * @param a1 The first resource event
-		 * @param a2 The second resource event
-		 * @return returns 0 if the two resource events are the same, 1 if the id of
-		 * the resource event is bigger than the id of the second resource event,
-		 * -1 otherwise
-		 */
-		public int compare(ResourceEvent a1, ResourceEvent a2) {
-			if (a1.id == a2.id)
-				return 0;
-			else if (a1.id > a2.id)
-				return 1;
-			else
-				return -1;
-		}
+	public void setCostMatrixThreads(int costMatrixThreads) {
+		this.costMatrixThreads = costMatrixThreads;
 	}
 
 	/**
-	 * Retrieves the total number of agents
+	 * Sets the number of threads used to map match the pickup and dropoff locations of the
+	 * resources. The locations do not depend on the number of threads. Must be called before
+	 * configure().
 	 *
-	 * @return {@code totalAgents }
+	 * @param mapMatchThreads the number of threads; 0 means one per available processor
 	 */
-	public long totalAgents() {
-		return totalAgents;
+	public void setMapMatchThreads(int mapMatchThreads) {
+		this.mapMatchThreads = mapMatchThreads;
+	}
+
+	/**
+	 * Retrieves the number of threads used to map match the resources
+	 *
+	 * @return {@code mapMatchThreads }
+	 */
+	public int mapMatchThreads() {
+		return mapMatchThreads;
+	}
+
+	/**
+	 * Sets the side of the cells of the snap cache used to map match the pickup and dropoff
+	 * locations of the resources. With a cache, the points are quantized to square cells of this
+	 * side and every cell is matched once. Must be called before configure().
+	 *
+	 * @param snapCacheResolution the side of the cells in meters; 0 means no cache
+	 */
+	public void setSnapCacheResolution(double snapCacheResolution) {
+		this.snapCacheResolution = snapCacheResolution;
+	}
+
+	/**
+	 * Retrieves the side of the cells of the snap cache used to map match the resources
+	 *
+	 * @return {@code snapCacheResolution }
+	 */
+	public double snapCacheResolution() {
+		return snapCacheResolution;
+	}
+
+	/**
+	 * Sets the number of threads used to parse the resource dataset file. The resources do not
+	 * depend on the number of threads. Must be called before configure().
+	 *
+	 * @param parseThreads the number of threads; 0 means one per available processor
+	 */
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * Retrieves the number of threads used to parse the resource dataset file
+	 *
+	 * @return {@code parseThreads }
+	 */
+	public int parseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * Sets the solver assigning resources to agents in every pool. All solvers find assignments
+	 * of maximum total benefit; when several exist, they may pick different ones.
+	 *
+	 * @param assignmentSolver ASSIGNMENT_SOLVER_HUNGARIAN, ASSIGNMENT_SOLVER_JONKER_VOLGENANT or ASSIGNMENT_SOLVER_SPARSE
+	 */
+	public void setAssignmentSolver(String assignmentSolver) {
+		this.assignmentSolver = assignmentSolver;
+	}
+
+	/**
+	 * Sets the number of nearest agents that are candidates for a resource with
+	 * ASSIGNMENT_SOLVER_SPARSE.
+	 *
+	 * @param assignmentCandidates the number of candidates per resource
+	 */
+	public void setAssignmentCandidates(int assignmentCandidates) {
+		this.assignmentCandidates = assignmentCandidates;
+	}
+
+	/**
+	 * Sets the longest approach time of a candidate agent with ASSIGNMENT_SOLVER_SPARSE.
+	 *
+	 * @param maximumApproachTime the approach time in seconds; 0 means no limit
+	 */
+	public void setMaximumApproachTime(long maximumApproachTime) {
+		this.maximumApproachTime = maximumApproachTime;
+	}
+
+	/**
+	 * Sets the routing engine answering travel-time queries. Must be called before configure.
+	 *
+	 * @param routingEngine ROUTING_ENGINE_TABLE or ROUTING_ENGINE_CONTRACTION_HIERARCHY
+	 */
+	public void setRoutingEngine(String routingEngine) {
+		this.routingEngine = routingEngine;
+	}
+
+	/**
+	 * Sets the event queue of the simulation. Both queues trigger the events in the same order.
+	 * Must be called before configure.
+	 *
+	 * @param eventQueue EVENT_QUEUE_HEAP or EVENT_QUEUE_CALENDAR
+	 */
+	public void setEventQueue(String eventQueue) {
+		this.eventQueue = eventQueue;
+	}
+
+	/**
+	 * Sets the directory in which compiled maps and pre-computed travel-time tables are cached.
+	 * Must be called before configure.
+	 *
+	 * @param cacheDirectory the directory; null disables the cache
+	 */
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
 	}
 
 	/**
@@ -639,9 +993,9 @@ public class Simulator {
 	/**
 	 * Sets the events of the simulation.
 	 *
-	 * @param events The PriorityQueue of events
+	 * @param events The EventQueue of events
 	 */
-	public void setEvents(PriorityQueue<Event> events) {
+	public void setEvents(EventQueue events) {
 		this.events = events;
 	}
 
@@ -650,7 +1004,7 @@ public class Simulator {
 	 *
 	 * @return {@code events }
 	 */
-	public PriorityQueue<Event> getEvents() {
+	public EventQueue getEvents() {
 		return events;
 	}
 
@@ -659,16 +1013,16 @@ public class Simulator {
 	 *
 	 * @return {@code emptyAgents }
 	 */
-	public TreeSet<AgentEvent> getEmptyAgents() {
+	public DenseIdSet<AgentEvent> getEmptyAgents() {
 		return emptyAgents;
 	}
 
 	/**
 	 * Sets the empty agents in the simulation
 	 *
-	 * @param emptyAgents The TreeSet of agent events to set.
+	 * @param emptyAgents The set of agent events to set.
 	 */
-	public void setEmptyAgents(TreeSet<AgentEvent> emptyAgents) {
+	public void setEmptyAgents(DenseIdSet<AgentEvent> emptyAgents) {
 		this.emptyAgents = emptyAgents;
 	}
 
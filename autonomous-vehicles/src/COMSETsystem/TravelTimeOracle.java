@@ -0,0 +1,50 @@
+package COMSETsystem;
+
+import java.util.stream.IntStream;
+
+/**
+ * A TravelTimeOracle answers shortest travel-time queries between the intersections of a map.
+ * Intersections are identified by their pathTableIndex. CityMap delegates all its travel-time
+ * and shortest-path queries to an oracle, which is either the all-pair PathTable or a
+ * ContractionHierarchy.
+ */
+public interface TravelTimeOracle {
+
+	/**
+	 * Gets the shortest travel time between two intersections.
+	 *
+	 * @param source the path table index of the source intersection
+	 * @param destination the path table index of the destination intersection
+	 * @return the travel time in seconds, or Long.MAX_VALUE if destination cannot be reached
+	 */
+	long travelTime(int source, int destination);
+
+	/**
+	 * Gets a shortest travel-time path between two intersections.
+	 *
+	 * @param source the path table index of the source intersection
+	 * @param destination the path table index of the destination intersection
+	 * @return the path table indices of the intersections on the path, from source to destination
+	 * inclusive, or null if destination cannot be reached
+	 */
+	int[] path(int source, int destination);
+
+	/**
+	 * Gets the shortest travel times between every source and every destination. Rows are
+	 * computed in parallel; an implementation may override this with a faster batch algorithm.
+	 *
+	 * @param sources the path table indices of the source intersections
+	 * @param destinations the path table indices of the destination intersections
+	 * @return the travel times in seconds, indexed by [source][destination]; Long.MAX_VALUE if
+	 * a destination cannot be reached
+	 */
+	default long[][] travelTimes(int[] sources, int[] destinations) {
+		long[][] travelTimes = new long[sources.length][destinations.length];
+		IntStream.range(0, sources.length).parallel().forEach(i -> {
+			for (int j = 0; j < destinations.length; j++) {
+				travelTimes[i][j] = travelTime(sources[i], destinations[j]);
+			}
+		});
+		return travelTimes;
+	}
+}
@@ -1,12 +1,25 @@
 package DataParsing;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.LocalDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import MapCreation.MapCreator;
 
 /**
@@ -18,6 +31,18 @@ import MapCreation.MapCreator;
  * 2. "pickup_longitude", "pickup_latitude": The location at which the resource (passenger) is introduced.
  * 3. "dropoff_longitude", "dropoff_latitude": The location at which the resource (passenger) is dropped off.
  *
+ * The file is memory-mapped and scanned for the delimiters eight bytes at a time. The numbers and the time
+ * stamps are decoded from the bytes without creating strings; the epoch of the start of every
+ * local hour is cached, so a time stamp is converted with a few additions. The few fields that the
+ * byte-level decoding does not handle exactly, e.g. numbers with exponents or more than 18
+ * significant digits, and invalid dates, are decoded by Double.parseDouble and the
+ * DateTimeFormatter, so the result is the same as theirs.
+ *
+ * The file is split at row boundaries into chunks, which are parsed and filtered by the bounding
+ * polygon concurrently, each on its own mapping and with its own cache. The records of every chunk
+ * are sorted by time, and the chunks merged in the order of the file, so the records are in time
+ * order, those at the same time in the order of the file, whatever the number of threads.
+ *
  * @author TijanaKlimovic
  */
 public class CSVNewYorkParser {
@@ -32,14 +57,77 @@ public class CSVNewYorkParser {
 
 	ZoneId zoneId;
 
+	// The number of threads parsing the chunks; 0 or less means one per available processor.
+	private int numberOfThreads;
+
+	// The smallest and the largest chunk, in bytes; the file is split in about four chunks per thread
+	// within these bounds.
+	private final static int MIN_CHUNK_SIZE = 1 << 20;
+	private final static int MAX_CHUNK_SIZE = 1 << 26;
+
+	// The index of the last field read from a row, the dropoff latitude.
+	private final static int LAST_FIELD = 10;
+
+	// The number of local hours in the cache of epochs, a power of 2.
+	private final static int HOUR_CACHE_SIZE = 1 << 12;
+
+	// The exact powers of ten as doubles.
+	private final static double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	/**
+	 * A part of the file from the start of a row to the end of a row, with the records parsed from it
+	 * and the state of its parsing.
+	 */
+	private class Chunk {
+
+		// The position of the first byte of the chunk in the file, and of the byte after its last byte
+		final long start;
+		final long end;
+
+		// The records kept, sorted by time once the chunk is parsed
+		ResourceColumns columns = new ResourceColumns(1024);
+
+		// The exception that stopped the parsing of the chunk, if any; the records before it are kept
+		Exception failure;
+
+		// The bounds of the fields of the row being parsed, up to LAST_FIELD.
+		final int[] fieldStart = new int[LAST_FIELD + 1];
+		final int[] fieldEnd = new int[LAST_FIELD + 1];
+
+		// A direct-mapped cache from a local hour, counted from 1970-01-01T00:00 local time, to the epoch
+		// of its start.
+		final long[] cachedHours = new long[HOUR_CACHE_SIZE];
+		final long[] cachedEpochs = new long[HOUR_CACHE_SIZE];
+
+		Chunk(long start, long end) {
+			this.start = start;
+			this.end = end;
+			Arrays.fill(cachedHours, Long.MIN_VALUE);
+		}
+	}
+
+	/**
+	 * Constructor of the CSVNewYorkParser class, parsing with one thread per available processor
+	 * @param path full path to the resource dataset file
+	 * @param zoneId the time zone id of the studied area
+	 */
+	public CSVNewYorkParser(String path, ZoneId zoneId) {
+		this(path, zoneId, 0);
+	}
+
 	/**
 	 * Constructor of the CSVNewYorkParser class
 	 * @param path full path to the resource dataset file
 	 * @param zoneId the time zone id of the studied area
+	 * @param numberOfThreads the number of threads parsing the file; 0 or less means one per
+	 * available processor. The records do not depend on it.
 	 */
 	// resource specified in csv file located at path
-	public CSVNewYorkParser(String path, ZoneId zoneId) {
+	public CSVNewYorkParser(String path, ZoneId zoneId, int numberOfThreads) {
 		this.path = path;
+		this.numberOfThreads = numberOfThreads;
 		dtf = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss a");
 		//dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd hh:mm:ss");
 		// TLC Trip Record data uses local time. So the zone ID is America/New_York
@@ -77,48 +165,327 @@ public class CSVNewYorkParser {
 	 * @return ArrayList<Resource>
 	 */
 	public ArrayList<Resource> parse() {
+		ResourceColumns columns = parseColumns();
+		for (int i = 0; i < columns.size(); i++) {
+			resources.add(columns.resource(i));
+		}
+		return resources;
+	}
 
-		try {
-			Scanner sc = new Scanner(new File(path));   //scanner will scan the file specified by path
-			sc.useDelimiter(",|\n");    //scanner will skip over "," and "\n" found in file
-			sc.nextLine(); // skip the header
-
-			//while there are tokens in the file the scanner will scan the input
-			//each line in input file will contain 4 tokens for the scanner and will be in the format : latitude longitude time type
-			//per line of input file we will create a new TimestampAgRe object
-			// and save the 4 tokens of each line in the corresponding field of the TimestampAgRe object
-			while (sc.hasNext()) {
-				sc.next();// skip first VendorID
-				long time = dateConversion(sc.next());
-//				if(time==0L){
-////					System.out.println("Skipped");
-//					continue;
-//				}
-				sc.next();// skip these fields
-				sc.next();
-				sc.next();
-				double pickupLon = Double.parseDouble(sc.next());
-				double pickupLat = Double.parseDouble(sc.next());
-				sc.next();// skip these fields
-
-				//Skipped only for december, july 2014
-				sc.next();
-				double dropoffLon = Double.parseDouble(sc.next());
-				double dropoffLat = Double.parseDouble(sc.next());
-				sc.nextLine(); //skip rest of fileds in this line
-				// Only keep the resources such that both pickup location and dropoff location are within the bounding polygon.
-				if (!(MapCreator.insidePolygon(pickupLon, pickupLat) && MapCreator.insidePolygon(dropoffLon, dropoffLat))) {
-					continue;
+	/**
+	 * Parse the csv file into columns, keeping the same records as parse.
+	 *
+	 * @return the records, in time order and, at the same time, in the order of the file
+	 */
+	public ResourceColumns parseColumns() {
+		List<Chunk> chunks = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			int threads = numberOfThreads > 0 ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+			chunks = split(channel, threads);
+			threads = Math.min(threads, chunks.size());
+			if (threads <= 1) {
+				for (Chunk chunk : chunks) {
+					parseChunk(channel, chunk);
+				}
+			} else {
+				ExecutorService executor = Executors.newFixedThreadPool(threads);
+				try {
+					List<Future<?>> futures = new ArrayList<>();
+					for (Chunk chunk : chunks) {
+						futures.add(executor.submit(() -> parseChunk(channel, chunk)));
+					}
+					for (Future<?> future : futures) {
+						future.get();
+					}
+				} finally {
+					executor.shutdownNow();
 				}
-				if(time!=0L)
-					resources.add(new Resource(pickupLat, pickupLon, dropoffLat, dropoffLon, time)); //create new resource with the above fields
 			}
-			sc.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			e.printStackTrace();
 		} catch (Exception e) {
 
 			e.printStackTrace();
 		}
-		return resources;
+
+		// merge the chunks up to the first one that failed, as if the file had been parsed up to its error,
+		// by merging neighbors pairwise
+		List<ResourceColumns> merged = new ArrayList<>();
+		for (Chunk chunk : chunks) {
+			merged.add(chunk.columns);
+			if (chunk.failure != null) {
+				chunk.failure.printStackTrace();
+				break;
+			}
+		}
+		if (merged.isEmpty()) {
+			return new ResourceColumns(1);
+		}
+		while (merged.size() > 1) {
+			List<ResourceColumns> next = new ArrayList<>();
+			for (int i = 0; i < merged.size(); i += 2) {
+				next.add(i + 1 < merged.size() ? ResourceColumns.merge(merged.get(i), merged.get(i + 1)) : merged.get(i));
+			}
+			merged = next;
+		}
+		return merged.get(0);
+	}
+
+	/**
+	 * Splits the file into chunks of about four per thread, starting at the start of a row and ending
+	 * after the end of a row.
+	 */
+	private List<Chunk> split(FileChannel channel, int threads) throws IOException {
+		long size = channel.size();
+		long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (4L * threads)));
+		List<Chunk> chunks = new ArrayList<>();
+		long start = 0;
+		while (start < size) {
+			long end = start + chunkSize >= size ? size : rowStartFrom(channel, start + chunkSize);
+			chunks.add(new Chunk(start, end));
+			start = end;
+		}
+		return chunks;
+	}
+
+	// The position of the start of the first row starting at or after a position of the file.
+	private static long rowStartFrom(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		long offset = position - 1;
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read <= 0) {
+				return channel.size();
+			}
+			int newline = indexOf(buffer, (byte) '\n', 0, read);
+			if (newline < read) {
+				return offset + newline + 1;
+			}
+			offset += read;
+		}
 	}
 
-}
\ No newline at end of file
+	// Parses the rows of a chunk, skipping the header at the start of the file, and sorts its records
+	// by time.
+	private void parseChunk(FileChannel channel, Chunk chunk) {
+		try {
+			int length = (int) (chunk.end - chunk.start);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, length);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			int rowStart = chunk.start == 0 ? indexOf(buffer, (byte) '\n', 0, length) + 1 : 0;
+			while (rowStart < length) {
+				int rowEnd = indexOf(buffer, (byte) '\n', rowStart, length);
+				parseRow(chunk, buffer, rowStart, rowEnd);
+				rowStart = rowEnd + 1;
+			}
+		} catch (Exception e) {
+			chunk.failure = e;
+		}
+		chunk.columns = chunk.columns.sortedByTime();
+	}
+
+	// Parses the row of a chunk between start and end, adding it to the records of the chunk if it is kept.
+	private void parseRow(Chunk chunk, ByteBuffer buffer, int start, int end) {
+		if (isBlank(buffer, start, end)) {
+			return;
+		}
+		int[] fieldStart = chunk.fieldStart;
+		int[] fieldEnd = chunk.fieldEnd;
+		int i = start;
+		for (int field = 0; field <= LAST_FIELD; field++) {
+			if (i > end) {
+				throw new IllegalArgumentException("Missing fields in row: " + string(buffer, start, end));
+			}
+			fieldStart[field] = i;
+			fieldEnd[field] = indexOf(buffer, (byte) ',', i, end);
+			i = fieldEnd[field] + 1;
+		}
+
+		// the fields VendorID, tpep_dropoff_datetime, passenger_count, trip_distance, RatecodeID and
+		// store_and_fwd_flag are skipped
+		long time = parseTime(chunk, buffer, fieldStart[1], fieldEnd[1]);
+		double pickupLon = parseDouble(buffer, fieldStart[5], fieldEnd[5]);
+		double pickupLat = parseDouble(buffer, fieldStart[6], fieldEnd[6]);
+		double dropoffLon = parseDouble(buffer, fieldStart[9], fieldEnd[9]);
+		double dropoffLat = parseDouble(buffer, fieldStart[10], fieldEnd[10]);
+		// Only keep the resources such that both pickup location and dropoff location are within the bounding polygon.
+		if (!(MapCreator.insidePolygon(pickupLon, pickupLat) && MapCreator.insidePolygon(dropoffLon, dropoffLat))) {
+			return;
+		}
+		if (time != 0L) {
+			chunk.columns.add(pickupLat, pickupLon, dropoffLat, dropoffLon, time);
+		}
+	}
+
+	/**
+	 * Decodes a time stamp in the format MM/dd/yyyy hh:mm:ss a into the Linux epoch, as
+	 * dateConversion does.
+	 */
+	private long parseTime(Chunk chunk, ByteBuffer buffer, int start, int end) {
+		if (end - start != 22 || buffer.get(start + 2) != '/' || buffer.get(start + 5) != '/'
+				|| buffer.get(start + 10) != ' ' || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':'
+				|| buffer.get(start + 19) != ' ' || buffer.get(start + 21) != 'M') {
+			return dateConversion(string(buffer, start, end));
+		}
+		int month = digits(buffer, start, 2);
+		int day = digits(buffer, start + 3, 2);
+		int year = digits(buffer, start + 6, 4);
+		int hour = digits(buffer, start + 11, 2);
+		int minute = digits(buffer, start + 14, 2);
+		int second = digits(buffer, start + 17, 2);
+		byte amPm = buffer.get(start + 20);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour < 1 || hour > 12
+				|| minute < 0 || minute > 59 || second < 0 || second > 59 || (amPm != 'A' && amPm != 'P')) {
+			return dateConversion(string(buffer, start, end));
+		}
+		hour = hour % 12 + (amPm == 'P' ? 12 : 0);
+		return epochOf(chunk, year, month, day, hour, minute, second);
+	}
+
+	/**
+	 * The epoch of a local time, from the cache of a chunk holding the epochs of the starts of local
+	 * hours. An hour is only cached if its start has a single offset, i.e. is neither in a gap nor in
+	 * an overlap, and the offset does not change during the hour, so that the epoch of any time in it
+	 * is that of its start plus the minutes and seconds; the times of the other hours are converted
+	 * exactly, as dateConversion does.
+	 */
+	private long epochOf(Chunk chunk, int year, int month, int day, int hour, int minute, int second) {
+		long localHour = epochDay(year, month, day) * 24 + hour;
+		int slot = (int) (localHour & (HOUR_CACHE_SIZE - 1));
+		if (chunk.cachedHours[slot] == localHour) {
+			return chunk.cachedEpochs[slot] + minute * 60 + second;
+		}
+		LocalDateTime start = LocalDateTime.of(year, month, day, hour, 0);
+		long epoch = ZonedDateTime.of(start, zoneId).toEpochSecond();
+		ZoneOffsetTransition next = zoneId.getRules().nextTransition(Instant.ofEpochSecond(epoch));
+		if (zoneId.getRules().getValidOffsets(start).size() != 1 || (next != null && next.toEpochSecond() < epoch + 3600)) {
+			return ZonedDateTime.of(year, month, day, hour, minute, second, 0, zoneId).toEpochSecond();
+		}
+		chunk.cachedHours[slot] = localHour;
+		chunk.cachedEpochs[slot] = epoch;
+		return epoch + minute * 60 + second;
+	}
+
+	/**
+	 * Decodes a number as Double.parseDouble does. A number of at most 18 significant digits, with
+	 * at most 22 digits after the point and no exponent, is the quotient of two doubles holding its
+	 * digits and a power of ten exactly, which is correctly rounded as Double.parseDouble rounds.
+	 */
+	private double parseDouble(ByteBuffer buffer, int start, int end) {
+		int from = start;
+		int to = end;
+		while (from < to && buffer.get(from) <= ' ') {
+			from++;
+		}
+		while (to > from && buffer.get(to - 1) <= ' ') {
+			to--;
+		}
+		int i = from;
+		boolean negative = false;
+		if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int significantDigits = 0;
+		int scale = 0;
+		boolean point = false;
+		boolean digit = false;
+		for (; i < to; i++) {
+			byte b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				digit = true;
+				mantissa = mantissa * 10 + (b - '0');
+				if (mantissa != 0 && ++significantDigits > 18) {
+					return Double.parseDouble(string(buffer, start, end));
+				}
+				if (point) {
+					scale++;
+				}
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				return Double.parseDouble(string(buffer, start, end));
+			}
+		}
+		if (!digit || mantissa > (1L << 53) || scale >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(string(buffer, start, end));
+		}
+		double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * The position of the first byte b from start, or end if there is none. The bytes are compared
+	 * eight at a time: the buffer is little-endian, so the lowest byte of a word is the first one, and
+	 * the lowest byte flagged in (word - 0x01..01) & ~word & 0x80..80, with word the bytes xor b, is
+	 * the first byte equal to b.
+	 */
+	private static int indexOf(ByteBuffer buffer, byte b, int start, int end) {
+		long pattern = 0x0101010101010101L * (b & 0xff);
+		int i = start;
+		for (; i + 8 <= end; i += 8) {
+			long word = buffer.getLong(i) ^ pattern;
+			long found = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		for (; i < end; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	// The value of count decimal digits from start, or -1 if one of them is not a digit.
+	private static int digits(ByteBuffer buffer, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			byte b = buffer.get(i);
+			if (b < '0' || b > '9') {
+				return -1;
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+		if (month == 2) {
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		}
+		return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+	}
+
+	// The number of days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+	private static long epochDay(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer.get(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String string(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = start; i < end; i++) {
+			bytes[i - start] = buffer.get(i);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,318 @@
+package DataParsing;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Collection;
+
+import COMSETsystem.*;
+
+/**
+ * The LinkIndex class is a static R-tree over the links of a map, bulk-loaded with the
+ * Sort-Tile-Recursive (STR) packing of Leutenegger, Lopez and Edgington, to find the link nearest
+ * to a point for map matching.
+ *
+ * The links are packed NODE_CAPACITY to a leaf: they are sorted by the x coordinate of their
+ * centers, cut into vertical slices of about sqrt(leaves) leaves each, and every slice is sorted by
+ * the y coordinate and cut into leaves. The leaves are packed into parent nodes the same way, and so
+ * on up to a single root. The tree is therefore balanced, and the nodes of a level cover nearly
+ * disjoint rectangles.
+ *
+ * The tree is stored in flat arrays: the end points of the links in packed order, and for every
+ * node its bounding box and the range of its children, which are links for a leaf and nodes
+ * otherwise. The leaves are the first nodes and the root is the last one.
+ *
+ * A query is a depth-first branch and bound search that visits the children of a node nearest
+ * first and skips the nodes whose bounding box is farther than the nearest link found so far.
+ * Distances are those of Link.distanceSq, computed the same way. Among links at the same distance
+ * the one given first to the constructor is returned, so the answer does not depend on the packing.
+ * The index is not modified by queries, which may therefore run concurrently.
+ */
+public class LinkIndex {
+
+	// The maximum number of children of a node
+	public final static int NODE_CAPACITY = 16;
+
+	// The links in packed order, their end points, and their positions in the order given
+	private final Link[] links;
+	private final double[] fromX;
+	private final double[] fromY;
+	private final double[] toX;
+	private final double[] toY;
+	private final int[] order;
+
+	// The bounding box of every node, and the range of its children in links for a leaf and in the
+	// nodes otherwise
+	private double[] nodeMinX;
+	private double[] nodeMinY;
+	private double[] nodeMaxX;
+	private double[] nodeMaxY;
+	private int[] nodeFirst;
+	private int[] nodeEnd;
+
+	// The nodes below numberOfLeaves are the leaves
+	private int numberOfLeaves;
+	private int numberOfNodes;
+
+	// The number of levels of nodes
+	private int height;
+
+	/**
+	 * Builds the index of some links.
+	 *
+	 * @param links the links, in the order that breaks ties between links at the same distance
+	 */
+	public LinkIndex(Collection<Link> links) {
+		int size = links.size();
+		Link[] given = links.toArray(new Link[size]);
+
+		// pack the links into leaves
+		double[] centerX = new double[size];
+		double[] centerY = new double[size];
+		for (int i = 0; i < size; i++) {
+			centerX[i] = (given[i].minX + given[i].maxX) / 2;
+			centerY[i] = (given[i].minY + given[i].maxY) / 2;
+		}
+		int[] packed = pack(size, centerX, centerY);
+
+		this.links = new Link[size];
+		fromX = new double[size];
+		fromY = new double[size];
+		toX = new double[size];
+		toY = new double[size];
+		order = new int[size];
+		for (int i = 0; i < size; i++) {
+			Link link = given[packed[i]];
+			this.links[i] = link;
+			fromX[i] = link.from.getX();
+			fromY[i] = link.from.getY();
+			toX[i] = link.to.getX();
+			toY[i] = link.to.getY();
+			order[i] = packed[i];
+		}
+
+		int capacity = 1;
+		for (int level = size; level > 1; level = (level + NODE_CAPACITY - 1) / NODE_CAPACITY) {
+			capacity += (level + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		}
+		nodeMinX = new double[capacity];
+		nodeMinY = new double[capacity];
+		nodeMaxX = new double[capacity];
+		nodeMaxY = new double[capacity];
+		nodeFirst = new int[capacity];
+		nodeEnd = new int[capacity];
+
+		// the leaves, over consecutive runs of links
+		for (int first = 0; first < size || first == 0; first += NODE_CAPACITY) {
+			int end = Math.min(first + NODE_CAPACITY, size);
+			int node = numberOfNodes++;
+			nodeFirst[node] = first;
+			nodeEnd[node] = end;
+			nodeMinX[node] = Double.POSITIVE_INFINITY;
+			nodeMinY[node] = Double.POSITIVE_INFINITY;
+			nodeMaxX[node] = Double.NEGATIVE_INFINITY;
+			nodeMaxY[node] = Double.NEGATIVE_INFINITY;
+			for (int i = first; i < end; i++) {
+				Link link = this.links[i];
+				nodeMinX[node] = Math.min(nodeMinX[node], link.minX);
+				nodeMinY[node] = Math.min(nodeMinY[node], link.minY);
+				nodeMaxX[node] = Math.max(nodeMaxX[node], link.maxX);
+				nodeMaxY[node] = Math.max(nodeMaxY[node], link.maxY);
+			}
+		}
+		numberOfLeaves = numberOfNodes;
+		height = 1;
+
+		// the upper levels, each packed from the nodes of the level below
+		int levelFirst = 0;
+		int levelEnd = numberOfNodes;
+		while (levelEnd - levelFirst > 1) {
+			int count = levelEnd - levelFirst;
+			double[] nodeCenterX = new double[count];
+			double[] nodeCenterY = new double[count];
+			for (int i = 0; i < count; i++) {
+				nodeCenterX[i] = (nodeMinX[levelFirst + i] + nodeMaxX[levelFirst + i]) / 2;
+				nodeCenterY[i] = (nodeMinY[levelFirst + i] + nodeMaxY[levelFirst + i]) / 2;
+			}
+			permute(levelFirst, pack(count, nodeCenterX, nodeCenterY));
+			for (int first = levelFirst; first < levelEnd; first += NODE_CAPACITY) {
+				int end = Math.min(first + NODE_CAPACITY, levelEnd);
+				int node = numberOfNodes++;
+				nodeFirst[node] = first;
+				nodeEnd[node] = end;
+				nodeMinX[node] = Double.POSITIVE_INFINITY;
+				nodeMinY[node] = Double.POSITIVE_INFINITY;
+				nodeMaxX[node] = Double.NEGATIVE_INFINITY;
+				nodeMaxY[node] = Double.NEGATIVE_INFINITY;
+				for (int child = first; child < end; child++) {
+					nodeMinX[node] = Math.min(nodeMinX[node], nodeMinX[child]);
+					nodeMinY[node] = Math.min(nodeMinY[node], nodeMinY[child]);
+					nodeMaxX[node] = Math.max(nodeMaxX[node], nodeMaxX[child]);
+					nodeMaxY[node] = Math.max(nodeMaxY[node], nodeMaxY[child]);
+				}
+			}
+			levelFirst = levelEnd;
+			levelEnd = numberOfNodes;
+			height++;
+		}
+	}
+
+	/**
+	 * @return the number of links in the index
+	 */
+	public int size() {
+		return links.length;
+	}
+
+	/**
+	 * @return true if the index has no links
+	 */
+	public boolean isEmpty() {
+		return links.length == 0;
+	}
+
+	/**
+	 * The link nearest to a point.
+	 *
+	 * @param p the point
+	 * @return the nearest link, or null if the index is empty
+	 */
+	public Link nearest(Point2D p) {
+		return nearest(p.getX(), p.getY());
+	}
+
+	/**
+	 * The link nearest to a point.
+	 *
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @return the nearest link, or null if the index is empty
+	 */
+	public Link nearest(double x, double y) {
+		if (links.length == 0) {
+			return null;
+		}
+		// the nodes to visit, with the squared distances to their bounding boxes; every level pushes at
+		// most NODE_CAPACITY nodes above the node it pops
+		int[] stack = new int[height * NODE_CAPACITY];
+		double[] stackDistances = new double[height * NODE_CAPACITY];
+		int top = 0;
+		stack[top] = numberOfNodes - 1;
+		stackDistances[top++] = 0;
+
+		int best = -1;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		while (top > 0) {
+			top--;
+			int node = stack[top];
+			if (stackDistances[top] > bestDistance) {
+				continue;
+			}
+			if (node < numberOfLeaves) {
+				for (int i = nodeFirst[node]; i < nodeEnd[node]; i++) {
+					double distance = distanceSq(i, x, y);
+					if (distance < bestDistance || (distance == bestDistance && order[i] < order[best])) {
+						best = i;
+						bestDistance = distance;
+					}
+				}
+				continue;
+			}
+			// push the children farthest first, so that the nearest one is visited first
+			int bottom = top;
+			for (int child = nodeFirst[node]; child < nodeEnd[node]; child++) {
+				double distance = boxDistanceSq(child, x, y);
+				if (distance > bestDistance) {
+					continue;
+				}
+				int position = top++;
+				while (position > bottom && stackDistances[position - 1] < distance) {
+					stack[position] = stack[position - 1];
+					stackDistances[position] = stackDistances[position - 1];
+					position--;
+				}
+				stack[position] = child;
+				stackDistances[position] = distance;
+			}
+		}
+		return links[best];
+	}
+
+	// The squared distance from a point to the link at a position, as in Link.distanceSq.
+	private double distanceSq(int i, double x, double y) {
+		double x1 = fromX[i];
+		double y1 = fromY[i];
+		double x2 = toX[i];
+		double y2 = toY[i];
+		double length = (x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2);
+		if (length == 0.0) {
+			return (x1 - x) * (x1 - x) + (y1 - y) * (y1 - y);
+		}
+		double t = ((x - x1) * (x2 - x1) + (y - y1) * (y2 - y1)) / length;
+		if (t < 0.0) {
+			return (x1 - x) * (x1 - x) + (y1 - y) * (y1 - y);
+		} else if (t > 1.0) {
+			return (x2 - x) * (x2 - x) + (y2 - y) * (y2 - y);
+		}
+		double projX = x1 + t * (x2 - x1);
+		double projY = y1 + t * (y2 - y1);
+		return (projX - x) * (projX - x) + (projY - y) * (projY - y);
+	}
+
+	// The squared distance from a point to the bounding box of a node; 0 inside it.
+	private double boxDistanceSq(int node, double x, double y) {
+		double dx = Math.max(Math.max(nodeMinX[node] - x, x - nodeMaxX[node]), 0);
+		double dy = Math.max(Math.max(nodeMinY[node] - y, y - nodeMaxY[node]), 0);
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Orders items for STR packing: by x into vertical slices of sqrt(groups) groups each, and each
+	 * slice by y, so that consecutive runs of NODE_CAPACITY items are compact groups.
+	 *
+	 * @return the items in packed order
+	 */
+	private static int[] pack(int count, double[] x, double[] y) {
+		Integer[] items = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			items[i] = i;
+		}
+		Arrays.sort(items, (a, b) -> Double.compare(x[a], x[b]) != 0 ? Double.compare(x[a], x[b]) : Integer.compare(a, b));
+		int groups = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int slices = (int) Math.ceil(Math.sqrt(groups));
+		int sliceSize = slices == 0 ? count : ((groups + slices - 1) / slices) * NODE_CAPACITY;
+		for (int first = 0; first < count; first += sliceSize) {
+			Arrays.sort(items, first, Math.min(first + sliceSize, count),
+					(a, b) -> Double.compare(y[a], y[b]) != 0 ? Double.compare(y[a], y[b]) : Integer.compare(a, b));
+		}
+		int[] packed = new int[count];
+		for (int i = 0; i < count; i++) {
+			packed[i] = items[i];
+		}
+		return packed;
+	}
+
+	// Reorders the nodes of a level, from position first, into the given order.
+	private void permute(int first, int[] packed) {
+		double[] minX = new double[packed.length];
+		double[] minY = new double[packed.length];
+		double[] maxX = new double[packed.length];
+		double[] maxY = new double[packed.length];
+		int[] firstChild = new int[packed.length];
+		int[] endChild = new int[packed.length];
+		for (int i = 0; i < packed.length; i++) {
+			int node = first + packed[i];
+			minX[i] = nodeMinX[node];
+			minY[i] = nodeMinY[node];
+			maxX[i] = nodeMaxX[node];
+			maxY[i] = nodeMaxY[node];
+			firstChild[i] = nodeFirst[node];
+			endChild[i] = nodeEnd[node];
+		}
+		System.arraycopy(minX, 0, nodeMinX, first, packed.length);
+		System.arraycopy(minY, 0, nodeMinY, first, packed.length);
+		System.arraycopy(maxX, 0, nodeMaxX, first, packed.length);
+		System.arraycopy(maxY, 0, nodeMaxY, first, packed.length);
+		System.arraycopy(firstChild, 0, nodeFirst, first, packed.length);
+		System.arraycopy(endChild, 0, nodeEnd, first, packed.length);
+	}
+}
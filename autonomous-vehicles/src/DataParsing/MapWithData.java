@@ -6,9 +6,15 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.jmx.Agent;
 
@@ -41,6 +47,18 @@ public class MapWithData {
 	// Time Zone ID of the map; for conversion from the time stamps in a resource dataset file to Linux epochs.
 	protected ZoneId zoneId;
 
+	// The number of points a thread of the batch mapMatch matches at a time.
+	private final static int MAP_MATCH_CHUNK = 1024;
+
+	// The maximum number of cells in the snap cache of a thread of the batch mapMatch.
+	private final static int SNAP_CACHE_CAPACITY = 1 << 16;
+
+	// The points matched by the batch mapMatch with a snap cache, those served from the cache, and the
+	// time spent on the others.
+	private long snapCacheLookups = 0;
+	private long snapCacheHits = 0;
+	private long snapCacheMissNanos = 0;
+
 	/**
 	 * Constructor of MapWithData
 	 * @param map reference to the map
@@ -69,27 +87,48 @@ public class MapWithData {
 	// Reads all the data from the input csv file
 	public long createMapWithData(Simulator simulator) {
  
-		CSVNewYorkParser parser = new CSVNewYorkParser(resourceFile, zoneId);
-		ArrayList<Resource> resourcesParsed = parser.parse();
+		CSVNewYorkParser parser = new CSVNewYorkParser(resourceFile, zoneId, simulator.parseThreads());
+		ResourceColumns resourcesParsed = parser.parseColumns();
 
-		simulator.initialPoolTime = resourcesParsed.get(0).getTime();
-		simulator.lastResourceTime = resourcesParsed.get(resourcesParsed.size()-1).getTime();
+		simulator.initialPoolTime = resourcesParsed.time(0);
+		simulator.lastResourceTime = resourcesParsed.time(resourcesParsed.size()-1);
 
 		try {
-            for (Resource resource : resourcesParsed) {
-				// map matching
-				LocationOnRoad pickupMatch = mapMatch(resource.getPickupLon(), resource.getPickupLat());
-				LocationOnRoad dropoffMatch = mapMatch(resource.getDropoffLon(), resource.getDropoffLat());
+			// map matching, of the pickup location of resource i at 2 * i and of its dropoff location at 2 * i + 1
+			double[] longitudes = new double[2 * resourcesParsed.size()];
+			double[] latitudes = new double[2 * resourcesParsed.size()];
+			for (int i = 0; i < resourcesParsed.size(); i++) {
+				longitudes[2 * i] = resourcesParsed.pickupLon(i);
+				latitudes[2 * i] = resourcesParsed.pickupLat(i);
+				longitudes[2 * i + 1] = resourcesParsed.dropoffLon(i);
+				latitudes[2 * i + 1] = resourcesParsed.dropoffLat(i);
+			}
+			LocationOnRoad[] matches = mapMatch(longitudes, latitudes, simulator.mapMatchThreads(),
+					simulator.snapCacheResolution());
+			if (simulator.snapCacheResolution() > 0 && snapCacheLookups > 0) {
+				// the time saved is estimated as the time a miss takes times the number of hits
+				long misses = snapCacheLookups - snapCacheHits;
+				long savedMillis = misses == 0 ? 0 : snapCacheMissNanos / misses * snapCacheHits / 1000000;
+				System.out.println("Snap cache: " + snapCacheHits + " of " + snapCacheLookups + " points hit ("
+						+ String.format("%.1f", 100.0 * snapCacheHits / snapCacheLookups) + "%), about "
+						+ savedMillis + " ms saved");
+			}
 
-				ResourceEvent ev = new ResourceEvent(pickupMatch, dropoffMatch, resource.getTime(), simulator);
+			// the events are created in the order of the records, i.e. by time, on this thread
+			for (int i = 0; i < resourcesParsed.size(); i++) {
+				long time = resourcesParsed.time(i);
+				LocationOnRoad pickupMatch = matches[2 * i];
+				LocationOnRoad dropoffMatch = matches[2 * i + 1];
+
+				ResourceEvent ev = new ResourceEvent(pickupMatch, dropoffMatch, time, simulator);
 				events.add(ev);
 
 				//  track earliestResourceTime and latestResourceTime
-				if (resource.getTime() < earliestResourceTime) {
-					earliestResourceTime = resource.getTime();
+				if (time < earliestResourceTime) {
+					earliestResourceTime = time;
 				}
-				if (resource.getTime() + simulator.ResourceMaximumLifeTime + ev.tripTime > latestResourceTime) {
-					latestResourceTime = resource.getTime() + simulator.ResourceMaximumLifeTime + ev.tripTime;
+				if (time + simulator.ResourceMaximumLifeTime + ev.tripTime > latestResourceTime) {
+					latestResourceTime = time + simulator.ResourceMaximumLifeTime + ev.tripTime;
 				}
 			}
 		} catch (Exception e) {
@@ -106,8 +145,13 @@ public class MapWithData {
 	 * @return
 	 */
 	public LocationOnRoad mapMatch(double longitude, double latitude) {
-		Link link = map.getNearestLink(longitude, latitude);
 		double xy[] = map.projector().fromLatLon(latitude, longitude);
+		return mapMatchProjected(xy);
+	}
+
+	// Match a point given by its projected coordinates to the closest location on the map.
+	private LocationOnRoad mapMatchProjected(double[] xy) {
+		Link link = map.getNearestLink(xy);
 		double [] snapResult = snap(link.from.getX(), link.from.getY(), link.to.getX(), link.to.getY(), xy[0], xy[1]);
 		double distanceFromStartVertex = this.distance(snapResult[0], snapResult[1], link.from.getX(), link.from.getY());
 		long travelTimeFromStartVertex = Math.round(distanceFromStartVertex / link.length * link.travelTime);
@@ -115,6 +159,120 @@ public class MapWithData {
 		return new LocationOnRoad(link.road, travelTimeFromStartIntersection);		
 	}
 
+	/**
+	 * Match a batch of points to the closest locations on the map, each as mapMatch does. The
+	 * points are matched in chunks of MAP_MATCH_CHUNK, handed out to the threads in turn; the
+	 * result does not depend on the number of threads.
+	 *
+	 * @param longitudes the longitudes of the points
+	 * @param latitudes the latitudes of the points
+	 * @param numberOfThreads the number of threads; 0 or less means one per available processor
+	 * @return the locations, in the order of the points
+	 */
+	public LocationOnRoad[] mapMatch(double[] longitudes, double[] latitudes, int numberOfThreads) {
+		return mapMatch(longitudes, latitudes, numberOfThreads, 0);
+	}
+
+	/**
+	 * Match a batch of points to the closest locations on the map, as the batch mapMatch above,
+	 * optionally through a snap cache. With a cache, the projected coordinates of a point are
+	 * quantized to a grid of square cells with sides of snapCacheResolution meters, and the point
+	 * is matched as the center of its cell; every thread keeps the locations of the cells it has
+	 * matched in a SnapCache of at most SNAP_CACHE_CAPACITY cells and returns the cached location
+	 * for the following points of a cell. A location depends only on its cell, so the result still
+	 * does not depend on the number of threads. The numbers of points and hits are added to the
+	 * startup report of createMapWithData.
+	 *
+	 * @param longitudes the longitudes of the points
+	 * @param latitudes the latitudes of the points
+	 * @param numberOfThreads the number of threads; 0 or less means one per available processor
+	 * @param snapCacheResolution the side of the cells in meters; 0 or less means no cache, and
+	 * every point is matched exactly
+	 * @return the locations, in the order of the points
+	 */
+	public LocationOnRoad[] mapMatch(double[] longitudes, double[] latitudes, int numberOfThreads,
+			double snapCacheResolution) {
+		LocationOnRoad[] locations = new LocationOnRoad[longitudes.length];
+		int chunks = (longitudes.length + MAP_MATCH_CHUNK - 1) / MAP_MATCH_CHUNK;
+		if (numberOfThreads <= 0) {
+			numberOfThreads = Runtime.getRuntime().availableProcessors();
+		}
+		numberOfThreads = Math.min(numberOfThreads, chunks);
+		if (numberOfThreads <= 1) {
+			mapMatch(0, longitudes.length, longitudes, latitudes, locations, snapCacheResolution);
+			return locations;
+		}
+
+		AtomicInteger nextChunk = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < numberOfThreads; t++) {
+				futures.add(executor.submit(() -> {
+					SnapCache cache = snapCacheResolution > 0 ? new SnapCache(snapCacheResolution, SNAP_CACHE_CAPACITY) : null;
+					long[] counts = new long[3];
+					int chunk;
+					while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+						int end = Math.min((chunk + 1) * MAP_MATCH_CHUNK, longitudes.length);
+						mapMatch(chunk * MAP_MATCH_CHUNK, end, longitudes, latitudes, locations, cache, counts);
+					}
+					countSnapCache(counts);
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while map matching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("failed to map match", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return locations;
+	}
+
+	// Match the points from first to end on this thread, with a snap cache of its own if enabled.
+	private void mapMatch(int first, int end, double[] longitudes, double[] latitudes, LocationOnRoad[] locations,
+			double snapCacheResolution) {
+		SnapCache cache = snapCacheResolution > 0 ? new SnapCache(snapCacheResolution, SNAP_CACHE_CAPACITY) : null;
+		long[] counts = new long[3];
+		mapMatch(first, end, longitudes, latitudes, locations, cache, counts);
+		countSnapCache(counts);
+	}
+
+	// Match the points from first to end, through a snap cache unless it is null, adding the points
+	// looked up, the hits and the time spent on misses to counts.
+	private void mapMatch(int first, int end, double[] longitudes, double[] latitudes, LocationOnRoad[] locations,
+			SnapCache cache, long[] counts) {
+		for (int i = first; i < end; i++) {
+			if (cache == null) {
+				locations[i] = mapMatch(longitudes[i], latitudes[i]);
+				continue;
+			}
+			long start = System.nanoTime();
+			double[] xy = map.projector().fromLatLon(latitudes[i], longitudes[i]);
+			long key = cache.key(xy[0], xy[1]);
+			LocationOnRoad location = cache.get(key);
+			counts[0]++;
+			if (location != null) {
+				counts[1]++;
+			} else {
+				location = mapMatchProjected(cache.center(key));
+				cache.put(key, location);
+				counts[2] += System.nanoTime() - start;
+			}
+			locations[i] = location;
+		}
+	}
+
+	private synchronized void countSnapCache(long[] counts) {
+		snapCacheLookups += counts[0];
+		snapCacheHits += counts[1];
+		snapCacheMissNanos += counts[2];
+	}
+
 	/**
 	 * Find the closest point on a line segment with end points (x1, y1) and
 	 * (x2, y2) to a point (x ,y), a procedure called snap.
@@ -2,7 +2,7 @@ package MapCreation;
 
 import COMSETsystem.*;
 import DataParsing.GeoProjector;
-import DataParsing.KdTree;
+import DataParsing.LinkIndex;
 
 import java.awt.peer.ListPeer;
 import java.io.BufferedReader;
@@ -308,6 +308,16 @@ public class MapCreator {
 		}
 	}
 
+	/**
+	 * Set the bounding polygon used by insidePolygon without creating a map, e.g., when the map
+	 * is read from a compiled map file. The polygon is closed the same way cropMap closes it.
+	 * @param boundingPolygonKMLFile a KML file defining a bounding polygon of the simulated area
+	 */
+	public static void loadBoundingPolygon(String boundingPolygonKMLFile) {
+		boundingPolygon = getPolygonFromKML(boundingPolygonKMLFile);
+		boundingPolygon.add(boundingPolygon.get(0));
+	}
+
 	/**
 	 * Construct the bounding polygon from a KML file
 	 * @param polygonKMLFile a KML file defining a polygon
@@ -662,19 +672,28 @@ public class MapCreator {
 	 * @return an instance of CityMap
 	 */
 	public CityMap outputCityMap() {
-		KdTree kdTree = new KdTree();
-		for (Vertex vertex : vertices.values()) {
-			for (Link link : vertex.getLinksFrom()) {
-				kdTree.insert(link);
-			}
-		}
+		LinkIndex linkIndex = new LinkIndex(links());
 		List<Road> roads = new ArrayList<>();
 		for (Intersection inter : intersections.values()) {
 			for (Road road : inter.getRoadsFrom()) {
 				roads.add(road);
 			}
 		}
-		return new CityMap(intersections, roads, projector, kdTree);
+		return new CityMap(intersections, roads, projector, linkIndex);
+	}
+
+	/**
+	 * Returns the links of the map, by start vertex and then by end vertex. This is the order in
+	 * which the spatial index of the map breaks ties between links at the same distance.
+	 *
+	 * @return the links
+	 */
+	public List<Link> links() {
+		List<Link> links = new ArrayList<>();
+		for (Vertex vertex : vertices.values()) {
+			links.addAll(vertex.getLinksFrom());
+		}
+		return links;
 	}
 
 	public List<double[]> boundingPolygon() {
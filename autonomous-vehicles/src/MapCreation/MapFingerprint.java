@@ -0,0 +1,59 @@
+package MapCreation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The MapFingerprint class identifies the inputs a map is created from: the contents of the map
+ * JSON file, the contents of the bounding polygon KML file and the speed reduction. Everything
+ * derived from these inputs only, such as a compiled map or the all-pair travel-time table, can
+ * be cached on disk under the fingerprint and reused as long as the inputs do not change.
+ */
+public class MapFingerprint {
+
+	/**
+	 * Computes the fingerprint of the inputs of a map.
+	 *
+	 * @param mapJSONFile full path to the OSM JSON map file
+	 * @param boundingPolygonKMLFile full path to the bounding polygon KML file
+	 * @param speedReduction the speed reduction applied to the map
+	 * @return the SHA-256 hash of the inputs as a hexadecimal string
+	 * @throws IOException if an input file cannot be read
+	 */
+	public static String of(String mapJSONFile, String boundingPolygonKMLFile, double speedReduction) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digestFile(digest, mapJSONFile);
+		digestFile(digest, boundingPolygonKMLFile);
+		digest.update(Double.toString(speedReduction).getBytes(StandardCharsets.UTF_8));
+
+		StringBuilder fingerprint = new StringBuilder();
+		for (byte b : digest.digest()) {
+			fingerprint.append(String.format("%02x", b));
+		}
+		return fingerprint.toString();
+	}
+
+	private static void digestFile(MessageDigest digest, String fileName) throws IOException {
+		Path file = Paths.get(fileName);
+		// Prefix the contents with their length so that the boundary between files is unambiguous.
+		digest.update((Long.toString(Files.size(file)) + ":").getBytes(StandardCharsets.UTF_8));
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+			while (in.read(buffer) != -1) {
+				// the stream updates the digest
+			}
+		}
+	}
+}
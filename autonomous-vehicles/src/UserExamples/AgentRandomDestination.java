@@ -94,6 +94,24 @@ public class AgentRandomDestination extends BaseAgent {
 		}		
 	}
 
+	/**
+	 * Commits the whole planned route, planning a new one if the current one is finished, so that the Simulator
+	 * moves the agent to its destination in a single event. The agent visits the same intersections as through
+	 * nextIntersection.
+	 *
+	 * @return The intersections of the route
+	 */
+
+	@Override
+	public LinkedList<Intersection> commitRoute(LocationOnRoad currentLocation, long currentTime) {
+		if (route.size() == 0) {
+			planSearchRoute(currentLocation, currentTime);
+		}
+		LinkedList<Intersection> committedRoute = route;
+		route = new LinkedList<Intersection>();
+		return committedRoute;
+	}
+
 	/**
 	 * A dummy implementation of the assignedTo callback function which does nothing but clearing the current route.
 	 * assignedTo is called when the agent is assigned to a resource.
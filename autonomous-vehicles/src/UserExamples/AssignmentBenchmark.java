@@ -0,0 +1,115 @@
+package UserExamples;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The AssignmentBenchmark class measures the time it takes to solve the assignment problem of a
+ * pool with Hungarian.hgAlgorithm and with JonkerVolgenant, on random benefit matrices shaped like
+ * the ones built by the simulator: benefit = trip / (trip + approach) for resources and agents
+ * placed uniformly in a square. The total benefits of both assignments are checked to be equal.
+ * It also solves the pool with SparseAssignment on the k agents of highest benefit of every
+ * resource, which may find a smaller total benefit.
+ *
+ * Usage: AssignmentBenchmark resources agents [seed [k]]
+ */
+public class AssignmentBenchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: AssignmentBenchmark resources agents [seed [k]]");
+			System.exit(1);
+		}
+		int resources = Integer.parseInt(args[0]);
+		int agents = Integer.parseInt(args[1]);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		int k = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+		double[][] benefits = randomBenefits(resources, agents, new Random(seed));
+
+		long start = System.nanoTime();
+		int[] jonkerVolgenant = JonkerVolgenant.maximize(benefits);
+		long jonkerVolgenantTime = System.nanoTime() - start;
+		double jonkerVolgenantBenefit = 0;
+		for (int r = 0; r < resources; r++) {
+			if (jonkerVolgenant[r] != JonkerVolgenant.UNASSIGNED) {
+				jonkerVolgenantBenefit += benefits[r][jonkerVolgenant[r]];
+			}
+		}
+		System.out.println("JonkerVolgenant: " + jonkerVolgenantTime / 1000000 + " ms, total benefit " + jonkerVolgenantBenefit);
+
+		sparse(benefits, agents, k);
+
+		double[][] copy = new double[resources][];
+		for (int r = 0; r < resources; r++) {
+			copy[r] = benefits[r].clone();
+		}
+		start = System.nanoTime();
+		int[][] hungarian = Hungarian.hgAlgorithm(copy, "max");
+		long hungarianTime = System.nanoTime() - start;
+		double hungarianBenefit = 0;
+		for (int i = 0; i < Math.min(resources, agents); i++) {
+			hungarianBenefit += resources > agents ? benefits[hungarian[i][1]][hungarian[i][0]] : benefits[hungarian[i][0]][hungarian[i][1]];
+		}
+		System.out.println("Hungarian: " + hungarianTime / 1000000 + " ms, total benefit " + hungarianBenefit);
+
+		if (Math.abs(hungarianBenefit - jonkerVolgenantBenefit) > 1e-9 * Math.max(1, Math.abs(hungarianBenefit))) {
+			System.out.println("The total benefits differ.");
+			System.exit(1);
+		}
+	}
+
+	private static void sparse(double[][] benefits, int agents, int k) {
+		int perResource = Math.min(k, agents);
+		int[] first = new int[benefits.length + 1];
+		int[] candidates = new int[benefits.length * perResource];
+		double[] candidateBenefits = new double[benefits.length * perResource];
+		for (int r = 0; r < benefits.length; r++) {
+			double[] row = benefits[r];
+			Integer[] order = new Integer[agents];
+			for (int a = 0; a < agents; a++) {
+				order[a] = a;
+			}
+			Arrays.sort(order, (a1, a2) -> Double.compare(row[a2], row[a1]));
+			first[r] = r * perResource;
+			for (int c = 0; c < perResource; c++) {
+				candidates[first[r] + c] = order[c];
+				candidateBenefits[first[r] + c] = row[order[c]];
+			}
+		}
+		first[benefits.length] = benefits.length * perResource;
+
+		long start = System.nanoTime();
+		int[] sparse = SparseAssignment.maximize(agents, first, candidates, candidateBenefits);
+		long sparseTime = System.nanoTime() - start;
+		double sparseBenefit = 0;
+		int unassigned = 0;
+		for (int r = 0; r < benefits.length; r++) {
+			if (sparse[r] == JonkerVolgenant.UNASSIGNED) {
+				unassigned++;
+			} else {
+				sparseBenefit += benefits[r][sparse[r]];
+			}
+		}
+		System.out.println("SparseAssignment, " + k + " candidates: " + sparseTime / 1000000 + " ms, total benefit " + sparseBenefit
+				+ ", " + unassigned + " resources unassigned");
+	}
+
+	private static double[][] randomBenefits(int resources, int agents, Random random) {
+		double[][] agentLocations = new double[agents][2];
+		for (double[] location : agentLocations) {
+			location[0] = random.nextDouble();
+			location[1] = random.nextDouble();
+		}
+		double[][] benefits = new double[resources][agents];
+		for (int r = 0; r < resources; r++) {
+			double pickupX = random.nextDouble();
+			double pickupY = random.nextDouble();
+			double trip = Math.hypot(random.nextDouble() - pickupX, random.nextDouble() - pickupY);
+			for (int a = 0; a < agents; a++) {
+				double approach = Math.hypot(agentLocations[a][0] - pickupX, agentLocations[a][1] - pickupY);
+				benefits[r][a] = trip / (trip + approach);
+			}
+		}
+		return benefits;
+	}
+}
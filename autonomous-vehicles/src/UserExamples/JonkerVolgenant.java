@@ -0,0 +1,168 @@
+package UserExamples;
+
+import java.util.Arrays;
+
+/**
+ * The JonkerVolgenant class solves the linear assignment problem on rectangular matrices with the
+ * shortest augmenting path method of Jonker and Volgenant, in the rectangular form described by
+ * Crouse ("On implementing 2D rectangular assignment algorithms", IEEE TAES, 2016).
+ *
+ * Every row of the smaller dimension is assigned in turn along a shortest augmenting path, found
+ * by a Dijkstra search over the reduced costs, after which the dual variables are updated so that
+ * the reduced costs stay non-negative. An n x m problem with n <= m takes O(n^2 m) time in the
+ * worst case and is solved without padding the matrix to a square one. Matrices with more rows
+ * than columns are solved on their transpose.
+ */
+public class JonkerVolgenant {
+
+	// The column of a row, or the row of a column, that is not assigned.
+	public final static int UNASSIGNED = -1;
+
+	private JonkerVolgenant() {}
+
+	/**
+	 * Finds an assignment of maximum total benefit. Each row is assigned to at most one column and
+	 * each column to at most one row, and min(rows, columns) pairs are assigned.
+	 *
+	 * @param benefits the benefit matrix, which is not modified
+	 * @return for every row, the column assigned to it, or UNASSIGNED
+	 */
+	public static int[] maximize(double[][] benefits) {
+		double largest = Double.NEGATIVE_INFINITY;
+		for (double[] row : benefits) {
+			for (double benefit : row) {
+				if (benefit > largest) {
+					largest = benefit;
+				}
+			}
+		}
+		double[][] costs = new double[benefits.length][];
+		for (int i = 0; i < benefits.length; i++) {
+			double[] row = new double[benefits[i].length];
+			for (int j = 0; j < row.length; j++) {
+				row[j] = largest - benefits[i][j];
+			}
+			costs[i] = row;
+		}
+		return solve(costs);
+	}
+
+	/**
+	 * Finds an assignment of minimum total cost. Each row is assigned to at most one column and
+	 * each column to at most one row, and min(rows, columns) pairs are assigned.
+	 *
+	 * @param costs the cost matrix, with non-negative entries; it is not modified
+	 * @return for every row, the column assigned to it, or UNASSIGNED
+	 */
+	public static int[] minimize(double[][] costs) {
+		return solve(costs);
+	}
+
+	private static int[] solve(double[][] costs) {
+		int rows = costs.length;
+		int columns = rows == 0 ? 0 : costs[0].length;
+		if (rows <= columns) {
+			return solveWide(costs, rows, columns);
+		}
+		double[][] transposed = new double[columns][rows];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
+				transposed[j][i] = costs[i][j];
+			}
+		}
+		int[] rowOfColumn = solveWide(transposed, columns, rows);
+		int[] columnOfRow = new int[rows];
+		Arrays.fill(columnOfRow, UNASSIGNED);
+		for (int j = 0; j < columns; j++) {
+			columnOfRow[rowOfColumn[j]] = j;
+		}
+		return columnOfRow;
+	}
+
+	// Assigns every row of a matrix with no more rows than columns.
+	private static int[] solveWide(double[][] costs, int rows, int columns) {
+		double[] u = new double[rows];
+		double[] v = new double[columns];
+		int[] columnOfRow = new int[rows];
+		int[] rowOfColumn = new int[columns];
+		Arrays.fill(columnOfRow, UNASSIGNED);
+		Arrays.fill(rowOfColumn, UNASSIGNED);
+
+		double[] shortestPathCosts = new double[columns];
+		int[] path = new int[columns];
+		int[] remaining = new int[columns];
+		boolean[] scannedRows = new boolean[rows];
+		boolean[] scannedColumns = new boolean[columns];
+
+		for (int currentRow = 0; currentRow < rows; currentRow++) {
+			// Dijkstra search from currentRow for the closest unassigned column
+			Arrays.fill(shortestPathCosts, Double.POSITIVE_INFINITY);
+			Arrays.fill(scannedRows, false);
+			Arrays.fill(scannedColumns, false);
+			int numberOfRemaining = columns;
+			for (int k = 0; k < columns; k++) {
+				remaining[k] = columns - k - 1;
+			}
+			double minimum = 0;
+			int i = currentRow;
+			int sink = UNASSIGNED;
+			while (sink == UNASSIGNED) {
+				scannedRows[i] = true;
+				double[] costRow = costs[i];
+				double ui = u[i];
+				int index = UNASSIGNED;
+				double lowest = Double.POSITIVE_INFINITY;
+				for (int k = 0; k < numberOfRemaining; k++) {
+					int j = remaining[k];
+					double reducedCost = minimum + costRow[j] - ui - v[j];
+					if (reducedCost < shortestPathCosts[j]) {
+						path[j] = i;
+						shortestPathCosts[j] = reducedCost;
+					}
+					// prefer an unassigned column among equally close ones, which ends the search
+					if (shortestPathCosts[j] < lowest || (shortestPathCosts[j] == lowest && rowOfColumn[j] == UNASSIGNED)) {
+						lowest = shortestPathCosts[j];
+						index = k;
+					}
+				}
+				if (index == UNASSIGNED) {
+					throw new IllegalArgumentException("the cost matrix admits no complete assignment");
+				}
+				minimum = lowest;
+				int j = remaining[index];
+				if (rowOfColumn[j] == UNASSIGNED) {
+					sink = j;
+				} else {
+					i = rowOfColumn[j];
+				}
+				scannedColumns[j] = true;
+				remaining[index] = remaining[--numberOfRemaining];
+			}
+
+			// update the dual variables
+			u[currentRow] += minimum;
+			for (int r = 0; r < rows; r++) {
+				if (scannedRows[r] && r != currentRow) {
+					u[r] += minimum - shortestPathCosts[columnOfRow[r]];
+				}
+			}
+			for (int c = 0; c < columns; c++) {
+				if (scannedColumns[c]) {
+					v[c] -= minimum - shortestPathCosts[c];
+				}
+			}
+
+			// augment along the path back to currentRow
+			int j = sink;
+			while (true) {
+				int r = path[j];
+				rowOfColumn[j] = r;
+				int previous = columnOfRow[r];
+				columnOfRow[r] = j;
+				j = previous;
+				if (r == currentRow) break;
+			}
+		}
+		return columnOfRow;
+	}
+}
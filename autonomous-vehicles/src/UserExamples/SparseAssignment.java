@@ -0,0 +1,191 @@
+package UserExamples;
+
+import java.util.Arrays;
+
+/**
+ * The SparseAssignment class solves maximum-benefit assignment problems in which every row may
+ * only be assigned to a few candidate columns, given in compressed sparse row form: the candidates
+ * of row i are candidates[first[i]] ... candidates[first[i + 1] - 1], with their benefits at the
+ * same positions in benefits.
+ *
+ * Not every row can always be assigned, since candidates of different rows overlap. Every row
+ * therefore has a private fallback column, meaning that the row stays unassigned, whose cost is
+ * larger than the cost of assigning all other rows, so the assignment found first maximizes the
+ * number of assigned rows and then their total benefit.
+ *
+ * Rows are assigned in turn along shortest augmenting paths as in JonkerVolgenant, but the
+ * Dijkstra searches follow the candidate edges only and keep their frontier in a binary heap, so
+ * time and memory grow with the number of candidate edges rather than with rows x columns.
+ */
+public class SparseAssignment {
+
+	// The columns of the frontier of a search and their tentative distances, as a binary min-heap
+	// that may hold stale entries
+	private double[] heapKeys = new double[16];
+	private int[] heapItems = new int[16];
+	private int heapSize;
+
+	private SparseAssignment() {}
+
+	/**
+	 * Finds an assignment of the rows to their candidate columns that assigns as many rows as
+	 * possible and, among those, has the maximum total benefit. Each column is assigned to at most
+	 * one row. Candidates with a NaN benefit are ignored.
+	 *
+	 * @param columns the number of columns
+	 * @param first the position of the first candidate of every row, followed by the number of candidates
+	 * @param candidates the candidate columns
+	 * @param benefits the benefits of the candidates
+	 * @return for every row, the column assigned to it, or JonkerVolgenant.UNASSIGNED
+	 */
+	public static int[] maximize(int columns, int[] first, int[] candidates, double[] benefits) {
+		return new SparseAssignment().solve(columns, first, candidates, benefits);
+	}
+
+	private int[] solve(int columns, int[] first, int[] candidates, double[] benefits) {
+		int rows = first.length - 1;
+		double largest = Double.NEGATIVE_INFINITY;
+		double smallest = Double.POSITIVE_INFINITY;
+		for (int e = 0; e < first[rows]; e++) {
+			if (benefits[e] > largest) largest = benefits[e];
+			if (benefits[e] < smallest) smallest = benefits[e];
+		}
+		// the cost of a candidate is largest - benefit, between 0 and largest - smallest
+		double unassignedCost = largest >= smallest ? rows * (largest - smallest) + 1 : 1;
+
+		// columns, then the fallback column of every row
+		int totalColumns = columns + rows;
+		double[] u = new double[rows];
+		double[] v = new double[totalColumns];
+		int[] columnOfRow = new int[rows];
+		int[] rowOfColumn = new int[totalColumns];
+		Arrays.fill(columnOfRow, JonkerVolgenant.UNASSIGNED);
+		Arrays.fill(rowOfColumn, JonkerVolgenant.UNASSIGNED);
+
+		double[] shortestPathCosts = new double[totalColumns];
+		Arrays.fill(shortestPathCosts, Double.POSITIVE_INFINITY);
+		int[] path = new int[totalColumns];
+		boolean[] scanned = new boolean[totalColumns];
+		int[] touched = new int[totalColumns];
+
+		for (int currentRow = 0; currentRow < rows; currentRow++) {
+			int numberOfTouched = 0;
+			heapSize = 0;
+			int i = currentRow;
+			double distance = 0;
+			int sink = JonkerVolgenant.UNASSIGNED;
+			while (sink == JonkerVolgenant.UNASSIGNED) {
+				// relax the edges of row i, which is at the given distance
+				double ui = u[i];
+				for (int e = first[i]; e <= first[i + 1]; e++) {
+					int j;
+					double cost;
+					if (e < first[i + 1]) {
+						if (Double.isNaN(benefits[e])) continue;
+						j = candidates[e];
+						cost = largest - benefits[e];
+					} else {
+						j = columns + i;
+						cost = unassignedCost;
+					}
+					if (scanned[j]) continue;
+					double reducedCost = distance + cost - ui - v[j];
+					if (reducedCost < shortestPathCosts[j]) {
+						if (shortestPathCosts[j] == Double.POSITIVE_INFINITY) {
+							touched[numberOfTouched++] = j;
+						}
+						shortestPathCosts[j] = reducedCost;
+						path[j] = i;
+						push(reducedCost, j);
+					}
+				}
+
+				// settle the closest column; the fallback column of the current row is always reachable
+				int j;
+				do {
+					j = heapItems[0];
+					double key = heapKeys[0];
+					pop();
+					if (!scanned[j] && key == shortestPathCosts[j]) break;
+				} while (true);
+				scanned[j] = true;
+				distance = shortestPathCosts[j];
+				if (rowOfColumn[j] == JonkerVolgenant.UNASSIGNED) {
+					sink = j;
+				} else {
+					i = rowOfColumn[j];
+				}
+			}
+
+			// update the dual variables of the scanned rows and columns, and reset the search
+			double minimum = distance;
+			u[currentRow] += minimum;
+			for (int t = 0; t < numberOfTouched; t++) {
+				int j = touched[t];
+				if (scanned[j]) {
+					int r = rowOfColumn[j];
+					if (r != JonkerVolgenant.UNASSIGNED && r != currentRow) {
+						u[r] += minimum - shortestPathCosts[j];
+					}
+					v[j] -= minimum - shortestPathCosts[j];
+					scanned[j] = false;
+				}
+				shortestPathCosts[j] = Double.POSITIVE_INFINITY;
+			}
+
+			// augment along the path back to currentRow
+			int j = sink;
+			while (true) {
+				int r = path[j];
+				rowOfColumn[j] = r;
+				int previous = columnOfRow[r];
+				columnOfRow[r] = j;
+				j = previous;
+				if (r == currentRow) break;
+			}
+		}
+
+		for (int r = 0; r < rows; r++) {
+			if (columnOfRow[r] >= columns) {
+				columnOfRow[r] = JonkerVolgenant.UNASSIGNED;
+			}
+		}
+		return columnOfRow;
+	}
+
+	private void push(double key, int item) {
+		if (heapSize == heapKeys.length) {
+			heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+			heapItems = Arrays.copyOf(heapItems, 2 * heapSize);
+		}
+		int position = heapSize++;
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (heapKeys[parent] <= key) break;
+			heapKeys[position] = heapKeys[parent];
+			heapItems[position] = heapItems[parent];
+			position = parent;
+		}
+		heapKeys[position] = key;
+		heapItems[position] = item;
+	}
+
+	private void pop() {
+		double key = heapKeys[--heapSize];
+		int item = heapItems[heapSize];
+		int position = 0;
+		int half = heapSize >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if (key <= heapKeys[child]) break;
+			heapKeys[position] = heapKeys[child];
+			heapItems[position] = heapItems[child];
+			position = child;
+		}
+		heapKeys[position] = key;
+		heapItems[position] = item;
+	}
+}
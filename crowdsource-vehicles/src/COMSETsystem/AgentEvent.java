@@ -2,6 +2,7 @@ package COMSETsystem;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,7 +23,9 @@ import java.util.logging.Logger;
  * In the case that the agent reaches an intersection, the AgentEvent invokes agent.nextIntersection()
  * to let the agent determine which of the neighboring intersections to go to. The AgentEvent is triggered
  * again when the agent reaches the next intersection, and so on. This is how the agent's search route
- * is executed. The searching ends when the agent is assigned to a resource, in which case the AgentEvent
+ * is executed. An agent that commits a whole route through agent.commitRoute() is instead triggered once,
+ * at the end of the route; in between, its location is brought up to date by advance() when a pool needs it.
+ * The searching ends when the agent is assigned to a resource, in which case the AgentEvent
  * is set to be triggered at the time when the agent drops off the resource to its destination.
  *
  * In the case that the agent drops off a resource, the AgentEvent checks if there are waiting resources. If so,
@@ -36,8 +39,17 @@ public class AgentEvent extends Event {
 	public final static int INTERSECTION_REACHED = 0;
 	public final static int DROPPING_OFF = 1;
 
-	// The location at which the event is triggered.
-	LocationOnRoad loc;
+	// The index of the agent in simulator.agentStore, which holds its location, the time at which it is
+	// there and the start of its search, and in simulator.emptyAgents.
+	final int index;
+
+	// The roads of the committed route and the times at which the agent reaches their ends; null if the
+	// agent does not drive a committed route.
+	private Road[] route;
+	private long[] routeEndTimes;
+
+	// The position in route of the road whose end is the location of the agent.
+	private int routePosition;
 
 	// The Agent object that the event pertains to.
 	public BaseAgent agent;
@@ -45,12 +57,6 @@ public class AgentEvent extends Event {
 	// The cause of the AgentEvent to be triggered, either INTERSECTION_REACHED or DROPPING_OFF.
 	public int eventCause;
 
-	/*
-	 * The time at which the agent started to search for a resource. This is also the
-	 * time at which the agent drops off a resource.
-	 */
-	long startSearchTime;
-
 	/**
 	 * Constructor for class AgentEvent.
 	 *
@@ -59,8 +65,9 @@ public class AgentEvent extends Event {
 	 */
 	public AgentEvent(LocationOnRoad loc, long startedSearch, Simulator simulator) {
 		super(startedSearch, simulator);
-		this.loc = loc;
-		this.startSearchTime = startedSearch;
+		this.index = simulator.agentStore.add(this);
+		simulator.agentStore.setLocation(index, loc, startedSearch);
+		simulator.agentStore.setSearchStartTime(index, startedSearch);
 		this.eventCause = DROPPING_OFF; // The introduction of an agent is considered a drop-off event.
 		simulator.emptyAgents.add(this);
 		try {
@@ -86,7 +93,7 @@ public class AgentEvent extends Event {
 	@Override
 	Event trigger() throws Exception {
 		Logger.getLogger(this.getClass().getName()).log(Level.INFO, "******** AgentEvent id = " + id+ " triggered at time " + time, this);
-		Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Loc = " + loc, this);
+		Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Loc = " + loc(), this);
 		//System.out.println("Agent Event");
 		Event e;
 		if (eventCause == DROPPING_OFF) {
@@ -102,10 +109,21 @@ public class AgentEvent extends Event {
 	 * The handler of an INTERSECTION_REACHED event.
 	 */
 	Event intersectionReachedHandler() throws Exception{
+		if (route != null) {
+			// the end of a committed route
+			setEvent(time, new LocationOnRoad(route[route.length - 1], route[route.length - 1].travelTime), INTERSECTION_REACHED);
+		}
+		LocationOnRoad loc = loc();
 		assert loc.travelTimeFromStartIntersection == loc.road.travelTime : "Agent not at an intersection.";
 
-		// Ask the agent to choose the next intersection to move to.
+		// Let the agent commit to a route, or else ask it to choose the next intersection to move to.
 		LocationOnRoad locAgentCopy = simulator.agentCopy(loc);
+		LinkedList<Intersection> committedRoute = agent.commitRoute(locAgentCopy, time);
+		if (committedRoute != null && !committedRoute.isEmpty()) {
+			commit(committedRoute);
+			Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Move along " + route.length + " roads to " + route[route.length - 1].to, this);
+			return this;
+		}
 		Intersection nextIntersection = agent.nextIntersection(locAgentCopy, time);
 		if (nextIntersection == null) {
 			throw new Exception("agent.move() did not return a next location");
@@ -129,7 +147,8 @@ public class AgentEvent extends Event {
 	 * The handler of a DROPPING_OFF event.
 	 */
 	Event dropoffHandler() {
-		startSearchTime = time;
+		simulator.agentStore.setSearchStartTime(index, time);
+		LocationOnRoad loc = loc();
 		Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Dropoff at " + loc, this);
 		// Only check the following when an agent drops off a resource.
 		// Check if there are resources waiting to be picked up by an agent.
@@ -227,7 +246,83 @@ public class AgentEvent extends Event {
 
 	public void setEvent(long time, LocationOnRoad loc, int eventCause) {
 		this.time = time;
-		this.loc = loc;
+		simulator.agentStore.setLocation(index, loc, time);
 		this.eventCause = eventCause;
+		this.route = null;
+	}
+
+	/*
+	 * Sets up the event at the end of a route committed at the current time and location.
+	 */
+	private void commit(LinkedList<Intersection> committedRoute) throws Exception {
+		route = new Road[committedRoute.size()];
+		routeEndTimes = new long[route.length];
+		Intersection current = simulator.agentStore.road(index).to;
+		long endTime = time;
+		int i = 0;
+		for (Intersection nextIntersection : committedRoute) {
+			if (!current.isAdjacent(nextIntersection)) {
+				throw new Exception("move not made to an adjacent location");
+			}
+			Road nextRoad = current.roadTo(nextIntersection);
+			endTime += nextRoad.travelTime;
+			route[i] = nextRoad;
+			routeEndTimes[i] = endTime;
+			current = nextRoad.to;
+			i++;
+		}
+		routePosition = 0;
+		simulator.agentStore.setLocation(index, new LocationOnRoad(route[0], route[0].travelTime), routeEndTimes[0]);
+		time = endTime;
+		eventCause = INTERSECTION_REACHED;
+	}
+
+	/**
+	 * Brings the location of the agent and the time at which it is there up to date on a committed route at the moment another event is triggered:
+	 * the agent has passed the end of every road that it would have reached in a separate event
+	 * triggered before that one.
+	 *
+	 * @param triggerTime the time of the event being triggered
+	 * @param triggerId the id of the event being triggered
+	 * @return true if the location changed
+	 */
+	boolean advance(long triggerTime, long triggerId) {
+		if (route == null) {
+			return false;
+		}
+		int position = routePosition;
+		while (position < route.length - 1 && (routeEndTimes[position] < triggerTime
+				|| (routeEndTimes[position] == triggerTime && id < triggerId))) {
+			position++;
+		}
+		if (position == routePosition) {
+			return false;
+		}
+		routePosition = position;
+		simulator.agentStore.setLocation(index, new LocationOnRoad(route[position], route[position].travelTime), routeEndTimes[position]);
+		return true;
+	}
+
+	/**
+	 * @return the location of the agent: where the event is triggered, or on a committed route, the end
+	 * of the road the agent was on when advance() was last called
+	 */
+	public LocationOnRoad loc() {
+		return simulator.agentStore.location(index);
+	}
+
+	/**
+	 * @return the time at which the agent is at loc(): the time of the event, except on a committed route
+	 */
+	public long locTime() {
+		return simulator.agentStore.time(index);
+	}
+
+	/**
+	 * @return the time at which the agent started to search for a resource. This is also the
+	 * time at which the agent dropped off its last resource.
+	 */
+	public long startSearchTime() {
+		return simulator.agentStore.searchStartTime(index);
 	}
 }
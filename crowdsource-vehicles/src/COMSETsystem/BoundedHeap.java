@@ -0,0 +1,74 @@
+package COMSETsystem;
+
+/**
+ * The BoundedHeap class selects the count smallest (key, item) pairs of a stream of pairs, with a
+ * max-heap of at most count pairs laid out in two arrays: the keys in keys[0 ... size - 1] and the
+ * items in items[offset ... offset + size - 1]. Pairs are ordered by key, then by item; NaN keys
+ * come last. Among equal keys, the smallest items are kept.
+ *
+ * It selects the agents closest to a pickup location for the candidates of a resource, and the
+ * preference lists of stable matching.
+ */
+public class BoundedHeap {
+
+	/**
+	 * Offers a pair to a heap that keeps the count smallest pairs.
+	 *
+	 * @return the new size of the heap
+	 */
+	public static int offer(double[] keys, int[] items, int offset, int size, int count, double key, int item) {
+		if (size < count) {
+			// sift up
+			int position = size++;
+			while (position > 0) {
+				int parent = (position - 1) >>> 1;
+				if (!greater(key, item, keys[parent], items[offset + parent])) break;
+				keys[position] = keys[parent];
+				items[offset + position] = items[offset + parent];
+				position = parent;
+			}
+			keys[position] = key;
+			items[offset + position] = item;
+		} else if (greater(keys[0], items[offset], key, item)) {
+			siftDown(keys, items, offset, size, key, item);
+		}
+		return size;
+	}
+
+	/**
+	 * Sorts a heap built by offer, smallest first.
+	 */
+	public static void sort(double[] keys, int[] items, int offset, int size) {
+		for (int end = size - 1; end > 0; end--) {
+			double key = keys[end];
+			int item = items[offset + end];
+			keys[end] = keys[0];
+			items[offset + end] = items[offset];
+			siftDown(keys, items, offset, end, key, item);
+		}
+	}
+
+	// Places (key, item) at the root of the max-heap of the given size and sifts it down.
+	private static void siftDown(double[] keys, int[] items, int offset, int size, double key, int item) {
+		int position = 0;
+		int half = size >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			if (child + 1 < size && greater(keys[child + 1], items[offset + child + 1], keys[child], items[offset + child])) {
+				child++;
+			}
+			if (!greater(keys[child], items[offset + child], key, item)) break;
+			keys[position] = keys[child];
+			items[offset + position] = items[offset + child];
+			position = child;
+		}
+		keys[position] = key;
+		items[offset + position] = item;
+	}
+
+	// Orders pairs by key, then by item; NaN keys come last.
+	private static boolean greater(double key, int item, double otherKey, int otherItem) {
+		int comparison = Double.compare(key, otherKey);
+		return comparison > 0 || (comparison == 0 && item > otherItem);
+	}
+}
@@ -0,0 +1,126 @@
+package COMSETsystem;
+
+/**
+ * The CalendarEventQueue class is an event queue in the form of a timing wheel with one bucket per
+ * second. Event times are whole seconds, and most events of the simulation are due within minutes:
+ * the next intersection of an agent, the drop-off of a resource, the expiration of a resource. The
+ * wheel covers the SLOTS seconds from its cursor on, so adding such an event costs a bucket insert
+ * and finding the first event a short walk over the buckets, whatever the number of pending
+ * events.
+ *
+ * Events due after the window of the wheel, such as the introduction of resources hours later, and
+ * events due before the cursor wait in an overflow heap, from which they move into the wheel as
+ * the cursor reaches them. The events of a bucket all have the same time and are ordered by id, so
+ * events are handed out in the order of Event.compareTo, exactly as by a HeapEventQueue. Every
+ * bucket is an EventHeap, so an event is removed from the bucket or the overflow heap that holds it
+ * without searching for it.
+ */
+public class CalendarEventQueue implements EventQueue {
+
+	// The number of buckets of the wheel, a power of two: the wheel covers a bit more than an hour.
+	private final static int SLOTS = 1 << 12;
+
+	// The buckets; the bucket of time t is slots[t & (SLOTS - 1)], created when it is first used
+	private final EventHeap[] slots = new EventHeap[SLOTS];
+
+	// The first second covered by the wheel, which never decreases
+	private long cursor = 0;
+
+	// The number of events in the wheel
+	private int wheelSize = 0;
+
+	// The events outside the window of the wheel when they were added
+	private final EventHeap overflow = new EventHeap(this);
+
+	@Override
+	public void add(Event event) {
+		if (inWindow(event.time)) {
+			slot(event.time).add(event);
+			wheelSize++;
+		} else {
+			overflow.add(event);
+		}
+	}
+
+	@Override
+	public Event peek() {
+		return first(false);
+	}
+
+	@Override
+	public Event poll() {
+		return first(true);
+	}
+
+	@Override
+	public boolean remove(Event event) {
+		if (!contains(event)) {
+			return false;
+		}
+		if (event.heap != overflow) {
+			wheelSize--;
+		}
+		event.heap.remove(event);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Event event) {
+		return event.heap != null && event.heap.queue == this;
+	}
+
+	@Override
+	public int size() {
+		return wheelSize + overflow.size();
+	}
+
+	// Finds the first event, and removes it if asked to.
+	private Event first(boolean remove) {
+		if (wheelSize == 0 && !overflow.isEmpty() && overflow.peek().time > cursor) {
+			cursor = overflow.peek().time;
+		}
+		migrate();
+		Event first = null;
+		if (wheelSize > 0) {
+			while (slots[index(cursor)] == null || slots[index(cursor)].isEmpty()) {
+				cursor++;
+				migrate();
+			}
+			first = slots[index(cursor)].peek();
+		}
+		// the overflow heap may hold an event due before the cursor
+		if (!overflow.isEmpty() && (first == null || overflow.peek().compareTo(first) < 0)) {
+			return remove ? overflow.poll() : overflow.peek();
+		}
+		if (first != null && remove) {
+			slots[index(cursor)].poll();
+			wheelSize--;
+		}
+		return first;
+	}
+
+	// Moves the events of the overflow heap that the window of the wheel has reached into the wheel.
+	private void migrate() {
+		while (!overflow.isEmpty() && inWindow(overflow.peek().time)) {
+			Event event = overflow.poll();
+			slot(event.time).add(event);
+			wheelSize++;
+		}
+	}
+
+	private boolean inWindow(long time) {
+		return time >= cursor && time - cursor < SLOTS;
+	}
+
+	private static int index(long time) {
+		return (int) (time & (SLOTS - 1));
+	}
+
+	private EventHeap slot(long time) {
+		int index = index(time);
+		if (slots[index] == null) {
+			slots[index] = new EventHeap(this);
+		}
+		return slots[index];
+	}
+}
@@ -0,0 +1,176 @@
+package COMSETsystem;
+
+import DataParsing.MapWithData;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * The CostMatrixBuilder class builds the benefit matrix of a pool: entry [r][a] is the benefit of
+ * assigning resource r to agent a, tripDistance / (tripDistance + approachDistance), where the
+ * distances are the Euclidean distances between the latitude/longitude coordinates of the pickup
+ * and the drop-off location of the resource and of the agent and the pickup location.
+ *
+ * The coordinates of every agent and every resource are computed once per pool into flat arrays,
+ * so a row of the matrix is a tight loop over primitive arrays. The arrays and the rows of the
+ * matrix are reused from one pool to the next when their sizes allow it.
+ *
+ * Large matrices are built on a fork-join pool: the rows are split recursively into ranges of
+ * about ROWS_TASK_ENTRIES entries, and every task writes its own rows of the shared matrix. Every
+ * entry only depends on its own row and column, so the matrix does not depend on the number of
+ * threads.
+ */
+public class CostMatrixBuilder {
+
+	// The number of matrix entries below which a range of rows is not split further.
+	private final static int ROWS_TASK_ENTRIES = 1 << 14;
+
+	// The pool computing the rows, or null to compute them on the calling thread
+	private final ForkJoinPool pool;
+
+	// The coordinates of the agents of the pool
+	private double[] agentLatitudes = new double[0];
+	private double[] agentLongitudes = new double[0];
+
+	// The coordinates of the pickup locations and the trip distances of the resources of the pool
+	private double[] pickupLatitudes = new double[0];
+	private double[] pickupLongitudes = new double[0];
+	private double[] tripDistances = new double[0];
+
+	private int numberOfAgents;
+	private int numberOfResources;
+
+	// The matrix returned by the last call to build()
+	private double[][] matrix = new double[0][];
+
+	/**
+	 * Constructs a builder computing the rows of a matrix on the given number of threads.
+	 *
+	 * @param numberOfThreads the number of threads; 0 means one per available processor
+	 */
+	public CostMatrixBuilder(int numberOfThreads) {
+		if (numberOfThreads <= 0) {
+			numberOfThreads = Runtime.getRuntime().availableProcessors();
+		}
+		pool = numberOfThreads == 1 ? null : new ForkJoinPool(numberOfThreads);
+	}
+
+	/**
+	 * Sets the agents of the pool, which become the columns of the matrix in index order. Their
+	 * coordinates are read from the store in one scan.
+	 *
+	 * @param agents the agents
+	 * @param store the store of the agents
+	 */
+	public void setAgents(DenseIdSet<AgentEvent> agents, AgentStore store) {
+		agentLatitudes = ensureCapacity(agentLatitudes, agents.size());
+		agentLongitudes = ensureCapacity(agentLongitudes, agents.size());
+		int a = 0;
+		for (int agent = agents.nextIndex(0); agent >= 0; agent = agents.nextIndex(agent + 1)) {
+			agentLatitudes[a] = store.latitude(agent);
+			agentLongitudes[a] = store.longitude(agent);
+			a++;
+		}
+		numberOfAgents = a;
+	}
+
+	/**
+	 * Sets the resources of the pool, which become the rows of the matrix in list order.
+	 *
+	 * @param resources the resources
+	 */
+	public void setResources(List<ResourceEvent> resources) {
+		numberOfResources = resources.size();
+		pickupLatitudes = ensureCapacity(pickupLatitudes, numberOfResources);
+		pickupLongitudes = ensureCapacity(pickupLongitudes, numberOfResources);
+		tripDistances = ensureCapacity(tripDistances, numberOfResources);
+		int r = 0;
+		for (ResourceEvent resource : resources) {
+			double[] pickup = resource.pickupLoc.toLatLon();
+			double[] dropoff = resource.dropoffLoc.toLatLon();
+			pickupLatitudes[r] = pickup[0];
+			pickupLongitudes[r] = pickup[1];
+			tripDistances[r] = MapWithData.distance(pickup[0], pickup[1], dropoff[0], dropoff[1]);
+			r++;
+		}
+	}
+
+	/**
+	 * Builds the benefit matrix of the current agents and resources. The matrix has exactly one
+	 * row per resource and one column per agent; it is reused by the next call to build(), so a
+	 * caller that needs it afterwards must copy it.
+	 *
+	 * @return the matrix
+	 */
+	public double[][] build() {
+		double[][] previous = matrix;
+		if (previous.length != numberOfResources) {
+			matrix = new double[numberOfResources][];
+		}
+		for (int r = 0; r < numberOfResources; r++) {
+			if (matrix[r] == null || matrix[r].length != numberOfAgents) {
+				matrix[r] = r < previous.length && previous[r].length == numberOfAgents ? previous[r] : new double[numberOfAgents];
+			}
+		}
+		forEachRow(this::fillRow);
+		return matrix;
+	}
+
+	// Runs an action for every resource, on the pool if the matrix is large enough.
+	private void forEachRow(IntConsumer action) {
+		if (pool == null || (long) numberOfResources * numberOfAgents <= ROWS_TASK_ENTRIES) {
+			for (int r = 0; r < numberOfResources; r++) {
+				action.accept(r);
+			}
+		} else {
+			pool.invoke(new RowTask(0, numberOfResources, action));
+		}
+	}
+
+	private void fillRow(int r) {
+		double[] row = matrix[r];
+		double pickupLatitude = pickupLatitudes[r];
+		double pickupLongitude = pickupLongitudes[r];
+		double tripDistance = tripDistances[r];
+		for (int a = 0; a < numberOfAgents; a++) {
+			double dx = agentLatitudes[a] - pickupLatitude;
+			double dy = agentLongitudes[a] - pickupLongitude;
+			// MapWithData.distance, inlined
+			row[a] = tripDistance / (tripDistance + Math.sqrt(dx * dx + dy * dy));
+		}
+	}
+
+	// Runs an action for the rows from ... to - 1, splitting the range in two while it holds too many entries.
+	private class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final IntConsumer action;
+
+		RowTask(int from, int to, IntConsumer action) {
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1 || (long) (to - from) * numberOfAgents <= ROWS_TASK_ENTRIES) {
+				for (int r = from; r < to; r++) {
+					action.accept(r);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RowTask(from, middle, action), new RowTask(middle, to, action));
+			}
+		}
+	}
+
+	private static double[] ensureCapacity(double[] array, int length) {
+		return array.length >= length ? array : new double[Math.max(length, 2 * array.length)];
+	}
+}
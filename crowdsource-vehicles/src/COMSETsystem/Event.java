@@ -25,6 +25,11 @@ public abstract class Event implements Comparable<Event> {
 	 */
 	long id;  
 
+	// The heap of the EventQueue holding the event and the position of the event in it; null if
+	// the event is not in a queue
+	EventHeap heap;
+	int heapPosition;
+
 	/**
 	 * Constructor for class Event
 	 *
@@ -0,0 +1,72 @@
+package COMSETsystem;
+
+/**
+ * An EventQueue holds the pending events of a simulation and hands them out in the order of
+ * Event.compareTo: by trigger time, then by id. The time of an event must not change while the
+ * event is in the queue; use reschedule instead.
+ *
+ * Every event in a queue carries a handle to its place in the queue, so removing, rescheduling
+ * and looking up an event take O(log n) or O(1) time instead of a scan of all pending events.
+ *
+ * The Simulator uses either a HeapEventQueue, a binary heap, or a CalendarEventQueue, a timing
+ * wheel with one bucket per second. Both hand out the same events in the same order.
+ */
+public interface EventQueue {
+
+	/**
+	 * Adds an event.
+	 *
+	 * @param event the event, which must not be in the queue
+	 */
+	void add(Event event);
+
+	/**
+	 * @return the first event, or null if the queue is empty
+	 */
+	Event peek();
+
+	/**
+	 * Removes the first event.
+	 *
+	 * @return the first event, or null if the queue is empty
+	 */
+	Event poll();
+
+	/**
+	 * Removes an event, if it is in the queue.
+	 *
+	 * @param event the event
+	 * @return whether the event was in the queue
+	 */
+	boolean remove(Event event);
+
+	/**
+	 * @param event an event
+	 * @return whether the event is in the queue
+	 */
+	boolean contains(Event event);
+
+	/**
+	 * Changes the time of an event, adding the event to the queue if it is not in it yet.
+	 *
+	 * @param event the event
+	 * @param time the new time of the event
+	 */
+	default void reschedule(Event event, long time) {
+		remove(event);
+		event.time = time;
+		add(event);
+	}
+
+	/**
+	 * @return the number of events in the queue
+	 */
+	int size();
+
+	/**
+	 * @return whether the queue is empty
+	 */
+	default boolean isEmpty() {
+		return size() == 0;
+	}
+}
@@ -0,0 +1,44 @@
+package COMSETsystem;
+
+/**
+ * The HeapEventQueue class is an event queue in the form of a binary heap, in which adding,
+ * polling and removing an event take O(log n) time.
+ */
+public class HeapEventQueue implements EventQueue {
+
+	private final EventHeap heap = new EventHeap(this);
+
+	@Override
+	public void add(Event event) {
+		heap.add(event);
+	}
+
+	@Override
+	public Event peek() {
+		return heap.peek();
+	}
+
+	@Override
+	public Event poll() {
+		return heap.poll();
+	}
+
+	@Override
+	public boolean remove(Event event) {
+		if (!contains(event)) {
+			return false;
+		}
+		heap.remove(event);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Event event) {
+		return event.heap == heap;
+	}
+
+	@Override
+	public int size() {
+		return heap.size();
+	}
+}
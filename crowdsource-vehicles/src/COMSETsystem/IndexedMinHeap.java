@@ -0,0 +1,192 @@
+package COMSETsystem;
+
+import java.util.Arrays;
+
+/**
+ * The IndexedMinHeap class is a binary min-heap over the dense integer items 0 ... capacity - 1,
+ * each holding at most one long key. The position of every item in the heap is tracked, so the
+ * key of an item that is already in the heap can be decreased in O(log n) instead of removing and
+ * re-adding it.
+ *
+ * Ties between equal keys are not broken in any particular order; callers that need a
+ * deterministic order encode the tie-break in the low bits of the key.
+ */
+public class IndexedMinHeap {
+
+	// The position returned for an item that is not in the heap.
+	private final static int NOT_IN_HEAP = -1;
+
+	// The items in heap order.
+	private final int[] items;
+
+	// The key of every item, indexed by item.
+	private final long[] keys;
+
+	// The position of every item in items, or NOT_IN_HEAP.
+	private final int[] positions;
+
+	// The number of items in the heap.
+	private int size;
+
+	/**
+	 * Constructs an empty heap.
+	 *
+	 * @param capacity the number of distinct items
+	 */
+	public IndexedMinHeap(int capacity) {
+		items = new int[capacity];
+		keys = new long[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, NOT_IN_HEAP);
+	}
+
+	/**
+	 * @return true if the heap holds no item
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the number of items in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param item an item
+	 * @return true if the item is in the heap
+	 */
+	public boolean contains(int item) {
+		return positions[item] != NOT_IN_HEAP;
+	}
+
+	/**
+	 * Gets the key of an item; only meaningful while the item is in the heap or right after it
+	 * has been polled.
+	 *
+	 * @param item an item
+	 * @return the key of the item
+	 */
+	public long key(int item) {
+		return keys[item];
+	}
+
+	/**
+	 * Inserts an item that is not in the heap.
+	 *
+	 * @param item the item
+	 * @param key the key of the item
+	 */
+	public void add(int item, long key) {
+		keys[item] = key;
+		siftUp(item, size++);
+	}
+
+	/**
+	 * Decreases the key of an item that is in the heap.
+	 *
+	 * @param item the item
+	 * @param key the new key, which must not be greater than the current key
+	 */
+	public void decreaseKey(int item, long key) {
+		keys[item] = key;
+		siftUp(item, positions[item]);
+	}
+
+	/**
+	 * Changes the key of an item that is in the heap to a smaller or a greater value.
+	 *
+	 * @param item the item
+	 * @param key the new key
+	 */
+	public void changeKey(int item, long key) {
+		long oldKey = keys[item];
+		keys[item] = key;
+		if (key < oldKey) {
+			siftUp(item, positions[item]);
+		} else {
+			siftDown(item, positions[item]);
+		}
+	}
+
+	/**
+	 * Inserts an item, or decreases its key if it is already in the heap.
+	 *
+	 * @param item the item
+	 * @param key the new key, which must not be greater than the current key
+	 */
+	public void addOrDecreaseKey(int item, long key) {
+		if (positions[item] == NOT_IN_HEAP) {
+			add(item, key);
+		} else {
+			decreaseKey(item, key);
+		}
+	}
+
+	/**
+	 * @return the item with the smallest key, without removing it
+	 */
+	public int peek() {
+		return items[0];
+	}
+
+	/**
+	 * Removes the item with the smallest key.
+	 *
+	 * @return the removed item
+	 */
+	public int poll() {
+		int top = items[0];
+		positions[top] = NOT_IN_HEAP;
+		int last = items[--size];
+		if (size > 0) {
+			siftDown(last, 0);
+		}
+		return top;
+	}
+
+	/**
+	 * Removes every item from the heap.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[items[i]] = NOT_IN_HEAP;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int item, int position) {
+		long key = keys[item];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			int parentItem = items[parent];
+			if (keys[parentItem] <= key) break;
+			items[position] = parentItem;
+			positions[parentItem] = position;
+			position = parent;
+		}
+		items[position] = item;
+		positions[item] = position;
+	}
+
+	private void siftDown(int item, int position) {
+		long key = keys[item];
+		int half = size >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			int childItem = items[child];
+			if (child + 1 < size && keys[items[child + 1]] < keys[childItem]) {
+				child++;
+				childItem = items[child];
+			}
+			if (key <= keys[childItem]) break;
+			items[position] = childItem;
+			positions[childItem] = position;
+			position = child;
+		}
+		items[position] = item;
+		positions[item] = position;
+	}
+}
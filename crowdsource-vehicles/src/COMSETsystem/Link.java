@@ -58,6 +58,32 @@ public class Link implements Comparable<Link> {
 		maxY = Math.max(from.xy.getY(), to.getY());
 	}
 	
+	/**
+	 * Constructor for Link with a given id, used when a map is read back from a compiled map file.
+	 * The travel time and the bounding box are derived as in Link(Vertex, Vertex, double, double).
+	 *
+	 * @param id the id of the link
+	 * @param from The start vertex
+	 * @param to The end vertex
+	 * @param length the length of the link
+	 * @param speed The speed limit on the link
+	 */
+	public Link (long id, Vertex from, Vertex to, double length, double speed) {
+		this.id = id;
+		// keep the ids of links created afterwards unique
+		maxId = Math.max(maxId, id + 1);
+		this.from = from;
+		this.to = to;
+		this.length = length;
+		this.speed = speed;
+		this.travelTime = (int)(Math.ceil(length/speed));
+		this.road = null;
+		minX = Math.min(from.xy.getX(), to.getX());
+		minY = Math.min(from.xy.getY(), to.getY());
+		maxX = Math.max(from.xy.getX(), to.getX());
+		maxY = Math.max(from.xy.getY(), to.getY());
+	}
+
 	/**
 	 * Constructing from an existing link
 	 * @param aLink an existing link
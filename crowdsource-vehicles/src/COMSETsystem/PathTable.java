@@ -0,0 +1,220 @@
+package COMSETsystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The PathTable class stores the all-pair shortest travel-time table of a map in two flat,
+ * row-major tables of ints. Row i of the table corresponds to the intersection whose
+ * pathTableIndex is i and holds the shortest travel times from that intersection to every
+ * intersection of the map, as well as the predecessor of every intersection on the
+ * corresponding shortest path.
+ *
+ * Compared to a table of boxed entries, each pair of intersections costs 8 bytes, and a
+ * lookup is a single buffer access. The tables are either held on the Java heap or
+ * memory-mapped read-only from a file written by writeTo(FileChannel), in which case
+ * several processes that map the same file share it through the page cache.
+ */
+public class PathTable implements TravelTimeOracle {
+
+	// The travel time stored for a pair of intersections that are not connected.
+	public final static int UNREACHABLE = Integer.MAX_VALUE;
+
+	// The predecessor stored for a pair of intersections that are not connected.
+	public final static int NO_PREDECESSOR = -1;
+
+	// The first int of a path table file.
+	private final static int FILE_MAGIC = 0x434d5054;
+
+	// The version of the path table file format.
+	private final static int FILE_VERSION = 1;
+
+	// The size of the file header in bytes: magic, version, size and a reserved int.
+	private final static int FILE_HEADER_BYTES = 16;
+
+	// The byte order of path table files.
+	private final static ByteOrder FILE_BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	// The number of intersections, i.e., the number of rows and the number of columns of the table.
+	private final int size;
+
+	// Shortest travel times in seconds, row-major.
+	private final IntBuffer travelTimes;
+
+	// Path table indices of the predecessors on the shortest paths, row-major.
+	private final IntBuffer predecessors;
+
+	/**
+	 * Constructs a table on the Java heap for the given number of intersections in which no
+	 * intersection can reach any other intersection.
+	 *
+	 * @param size the number of intersections
+	 * @throws IllegalArgumentException if the table does not fit in a Java array
+	 */
+	public PathTable(int size) {
+		if ((long) size * size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many intersections for an all-pair path table: " + size);
+		}
+		this.size = size;
+		int[] travelTimes = new int[size * size];
+		int[] predecessors = new int[size * size];
+		Arrays.fill(travelTimes, UNREACHABLE);
+		Arrays.fill(predecessors, NO_PREDECESSOR);
+		this.travelTimes = IntBuffer.wrap(travelTimes);
+		this.predecessors = IntBuffer.wrap(predecessors);
+	}
+
+	private PathTable(int size, IntBuffer travelTimes, IntBuffer predecessors) {
+		this.size = size;
+		this.travelTimes = travelTimes;
+		this.predecessors = predecessors;
+	}
+
+	/**
+	 * @return the number of intersections covered by the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the shortest travel time between two intersections.
+	 *
+	 * @param source the path table index of the source intersection
+	 * @param destination the path table index of the destination intersection
+	 * @return the travel time in seconds, or Long.MAX_VALUE if destination cannot be reached
+	 */
+	@Override
+	public long travelTime(int source, int destination) {
+		int travelTime = travelTimes.get(source * size + destination);
+		return travelTime == UNREACHABLE ? Long.MAX_VALUE : travelTime;
+	}
+
+	/**
+	 * Gets the predecessor of an intersection on the shortest path from a source intersection.
+	 *
+	 * @param source the path table index of the source intersection
+	 * @param destination the path table index of the destination intersection
+	 * @return the path table index of the predecessor, or NO_PREDECESSOR
+	 */
+	public int predecessor(int source, int destination) {
+		return predecessors.get(source * size + destination);
+	}
+
+	@Override
+	public int[] path(int source, int destination) {
+		if (travelTimes.get(source * size + destination) == UNREACHABLE) {
+			return null;
+		}
+		int length = 1;
+		for (int current = destination; current != source; current = predecessor(source, current)) {
+			length++;
+		}
+		int[] path = new int[length];
+		int current = destination;
+		for (int i = length - 1; i > 0; i--) {
+			path[i] = current;
+			current = predecessor(source, current);
+		}
+		path[0] = source;
+		return path;
+	}
+
+	/**
+	 * Sets the row of a source intersection.
+	 *
+	 * @param source the path table index of the source intersection
+	 * @param travelTimes the shortest travel times from source, indexed by path table index
+	 * @param predecessors the predecessors on the shortest paths from source, indexed by path table index
+	 */
+	void setRow(int source, int[] travelTimes, int[] predecessors) {
+		IntBuffer row = this.travelTimes.duplicate();
+		row.position(source * size);
+		row.put(travelTimes, 0, size);
+		row = this.predecessors.duplicate();
+		row.position(source * size);
+		row.put(predecessors, 0, size);
+	}
+
+	/**
+	 * Checks whether a table of the given size can be written to and mapped from a file.
+	 * Each of the two tables is mapped as a single region, which is limited to 2 GB.
+	 *
+	 * @param size the number of intersections
+	 * @return true if the table can be stored in a file
+	 */
+	public static boolean fitsInFile(int size) {
+		return 4L * size * size <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Writes the table to the beginning of an empty file opened for reading and writing.
+	 *
+	 * @param channel the file channel
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeTo(FileChannel channel) throws IOException {
+		if (!fitsInFile(size)) {
+			throw new IOException("path table too large for a file: " + size);
+		}
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(FILE_BYTE_ORDER);
+		header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(size).putInt(0);
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header, header.position());
+		}
+
+		long tableBytes = 4L * size * size;
+		MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, FILE_HEADER_BYTES, tableBytes);
+		region.order(FILE_BYTE_ORDER).asIntBuffer().put(rewound(travelTimes));
+		region.force();
+		region = channel.map(FileChannel.MapMode.READ_WRITE, FILE_HEADER_BYTES + tableBytes, tableBytes);
+		region.order(FILE_BYTE_ORDER).asIntBuffer().put(rewound(predecessors));
+		region.force();
+	}
+
+	/**
+	 * Maps a table read-only from a file written by writeTo(FileChannel).
+	 *
+	 * @param channel the file channel
+	 * @param expectedSize the number of intersections the table must cover
+	 * @return the table, or null if the file does not hold a complete table of the expected size
+	 * @throws IOException if the file cannot be read
+	 */
+	public static PathTable mapFrom(FileChannel channel, int expectedSize) throws IOException {
+		if (!fitsInFile(expectedSize)) {
+			return null;
+		}
+		long tableBytes = 4L * expectedSize * expectedSize;
+		if (channel.size() != FILE_HEADER_BYTES + 2 * tableBytes) {
+			return null;
+		}
+		ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(FILE_BYTE_ORDER);
+		while (header.hasRemaining()) {
+			if (channel.read(header, header.position()) < 0) {
+				return null;
+			}
+		}
+		header.flip();
+		if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION || header.getInt() != expectedSize) {
+			return null;
+		}
+
+		IntBuffer travelTimes = channel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER_BYTES, tableBytes)
+				.order(FILE_BYTE_ORDER).asIntBuffer();
+		IntBuffer predecessors = channel.map(FileChannel.MapMode.READ_ONLY, FILE_HEADER_BYTES + tableBytes, tableBytes)
+				.order(FILE_BYTE_ORDER).asIntBuffer();
+		return new PathTable(expectedSize, travelTimes, predecessors);
+	}
+
+	private static IntBuffer rewound(IntBuffer buffer) {
+		IntBuffer copy = buffer.duplicate();
+		copy.clear();
+		return copy;
+	}
+}
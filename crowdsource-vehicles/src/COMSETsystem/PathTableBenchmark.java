@@ -0,0 +1,141 @@
+package COMSETsystem;
+
+import MapCreation.MapCreator;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * The PathTableBenchmark class measures the time it takes to pre-compute the all-pair path table of
+ * a map. It compares the original Dijkstra, which seeds a PriorityQueue with every intersection and
+ * decreases a key by removing and re-adding the queue entry, against the Dijkstra of
+ * PathTableBuilder, which uses an indexed heap with decrease-key, on one thread and on all
+ * available processors. The tables are checked to be identical.
+ *
+ * Usage: PathTableBenchmark map_JSON_file bounding_polygon_KML_file [speed_reduction [repetitions]]
+ */
+public class PathTableBenchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: PathTableBenchmark map_JSON_file bounding_polygon_KML_file [speed_reduction [repetitions]]");
+			System.exit(1);
+		}
+		double speedReduction = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+		int repetitions = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		MapCreator creator = new MapCreator(args[0], args[1], speedReduction);
+		creator.createMap();
+		CityMap map = creator.outputCityMap();
+		int processors = Runtime.getRuntime().availableProcessors();
+		System.out.println("Intersections: " + map.intersections().size() + ", processors: " + processors);
+
+		PathTableBuilder builder = new PathTableBuilder(map.intersections().values());
+
+		long start = System.nanoTime();
+		PathTable legacy = legacyPathTable(map);
+		System.out.println("PriorityQueue with remove/add, 1 thread: " + millis(System.nanoTime() - start) + " ms");
+
+		PathTable indexed = null;
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < repetitions; r++) {
+			start = System.nanoTime();
+			indexed = builder.build(1);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println("Indexed heap with decrease-key, 1 thread: " + millis(best) + " ms (best of " + repetitions + ")");
+		check(legacy, indexed);
+
+		best = Long.MAX_VALUE;
+		for (int r = 0; r < repetitions; r++) {
+			start = System.nanoTime();
+			indexed = builder.build(processors);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println("Indexed heap with decrease-key, " + processors + " threads: " + millis(best) + " ms (best of " + repetitions + ")");
+		check(legacy, indexed);
+	}
+
+	private static long millis(long nanos) {
+		return nanos / 1000000;
+	}
+
+	private static void check(PathTable expected, PathTable actual) {
+		for (int i = 0; i < expected.size(); i++) {
+			for (int j = 0; j < expected.size(); j++) {
+				if (expected.travelTime(i, j) != actual.travelTime(i, j) || expected.predecessor(i, j) != actual.predecessor(i, j)) {
+					throw new IllegalStateException("path tables differ at (" + i + ", " + j + ")");
+				}
+			}
+		}
+	}
+
+	/**
+	 * The original path table computation: for every source, a PriorityQueue is seeded with all
+	 * intersections, and a key is decreased by an O(n) remove followed by an add.
+	 */
+	private static PathTable legacyPathTable(CityMap map) {
+		int size = map.intersections().size();
+		PathTable table = new PathTable(size);
+		int[] travelTimes = new int[size];
+		int[] predecessors = new int[size];
+
+		LegacyQueueEntry[] queueEntry = new LegacyQueueEntry[size];
+		for (Intersection i : map.intersections().values()) {
+			queueEntry[i.pathTableIndex] = new LegacyQueueEntry(i);
+		}
+
+		for (Intersection source : map.intersections().values()) {
+			for (LegacyQueueEntry entry : queueEntry) {
+				entry.cost = Long.MAX_VALUE;
+				entry.inQueue = true;
+			}
+			Arrays.fill(travelTimes, PathTable.UNREACHABLE);
+			Arrays.fill(predecessors, PathTable.NO_PREDECESSOR);
+
+			queueEntry[source.pathTableIndex].cost = 0;
+			travelTimes[source.pathTableIndex] = 0;
+			predecessors[source.pathTableIndex] = source.pathTableIndex;
+
+			PriorityQueue<LegacyQueueEntry> queue = new PriorityQueue<>(Arrays.asList(queueEntry));
+
+			while (!queue.isEmpty()) {
+				LegacyQueueEntry entry = queue.poll();
+				entry.inQueue = false;
+
+				for (Road r : entry.intersection.getRoadsFrom()) {
+					LegacyQueueEntry v = queueEntry[r.to.pathTableIndex];
+					if (!v.inQueue) continue;
+					long ncost = entry.cost + r.travelTime;
+					if (v.cost > ncost) {
+						queue.remove(v);
+						v.cost = ncost;
+						travelTimes[r.to.pathTableIndex] = (int) ncost;
+						predecessors[r.to.pathTableIndex] = entry.intersection.pathTableIndex;
+						queue.add(v);
+					}
+				}
+			}
+			table.setRow(source.pathTableIndex, travelTimes, predecessors);
+		}
+		return table;
+	}
+
+	private static class LegacyQueueEntry implements Comparable<LegacyQueueEntry> {
+		final Intersection intersection;
+		long cost = Long.MAX_VALUE;
+		boolean inQueue = true;
+
+		LegacyQueueEntry(Intersection intersection) {
+			this.intersection = intersection;
+		}
+
+		@Override
+		public int compareTo(LegacyQueueEntry j) {
+			if (this.cost != j.cost) {
+				return Long.compare(this.cost, j.cost);
+			}
+			return Long.compare(this.intersection.id, j.intersection.id);
+		}
+	}
+}
@@ -42,6 +42,9 @@ public class ResourceEvent extends Event {
 	// The shortest travel time from pickupLoc to dropoffLoc
 	public long tripTime;
 
+	// The index of the resource in simulator.waitingResources, in order of creation
+	final int index;
+
 	/**
 	 * Constructor for class ResourceEvent.
 	 *
@@ -52,6 +55,7 @@ public class ResourceEvent extends Event {
 	 */
 	public ResourceEvent(LocationOnRoad pickupLoc, LocationOnRoad dropoffLoc, long availableTime, Simulator simulator) {
 		super(availableTime, simulator);
+		this.index = simulator.numberOfResourceEvents++;
 		this.pickupLoc = pickupLoc;
 		this.dropoffLoc = dropoffLoc;
 		this.availableTime = availableTime;
@@ -3,6 +3,7 @@ package COMSETsystem;
 import MapCreation.*;
 
 import java.sql.Time;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -12,9 +13,8 @@ import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 
-import UserExamples.ArrayIndexComparator;
 import UserExamples.HungarianAlgorithm;
-import UserExamples.StableMatching;
+import UserExamples.GaleShapley;
 import me.tongfei.progressbar.*;
 
 
@@ -27,7 +27,7 @@ import static java.lang.Math.min;
  * The Simulator class defines the major steps of the simulation. It is
  * responsible for loading the map, creating the necessary number of agents,
  * creating a respective AgentEvent for each of them such that they are added
- * to the events PriorityQueue. Furthermore it is also responsible for dealing 
+ * to the events EventQueue. Furthermore it is also responsible for dealing 
  * with the arrival of resources, map matching them to the map, and assigning  
  * them to agents. This produces the score according to the scoring rules.
  * <p>
@@ -35,11 +35,23 @@ import static java.lang.Math.min;
  * corresponds to when something will be empty and thus needs some
  * interaction (triggering). There's an event corresponding to every existent
  * Agent and for every resource that hasn't arrived yet. All of this events are
- * in a PriorityQueue called events which is ordered by their time in an
+ * in an EventQueue called events which is ordered by their time in an
  * increasing way.
  */
 public class Simulator {
 
+	// Routing engine answering travel-time queries from an all-pair path table.
+	public final static String ROUTING_ENGINE_TABLE = "table";
+
+	// Routing engine answering travel-time queries with a contraction hierarchy.
+	public final static String ROUTING_ENGINE_CONTRACTION_HIERARCHY = "ch";
+
+	// Event queue in the form of a binary heap, see HeapEventQueue.
+	public final static String EVENT_QUEUE_HEAP = "heap";
+
+	// Event queue in the form of a timing wheel with one bucket per second, see CalendarEventQueue.
+	public final static String EVENT_QUEUE_CALENDAR = "calendar";
+
 	//list of hubs
 	List<Intersection> hubs;
 
@@ -54,13 +66,19 @@ public class Simulator {
 	protected CityMap mapForAgents;
 
 	// The event queue.
-	protected PriorityQueue<Event> events = new PriorityQueue<>();
+	protected EventQueue events = new HeapEventQueue();
+
+	// The set of empty agents, by index in agentStore.
+	protected DenseIdSet<AgentEvent> emptyAgents = new DenseIdSet<>(agent -> agent.index);
 
-	// The set of empty agents.
-	protected TreeSet<AgentEvent> emptyAgents = new TreeSet<>(new AgentEventComparator());
+	// The state of all agents in columns, scanned by the pools and the statistics.
+	protected AgentStore agentStore;
 
 	// The set of resources that with no agent assigned to it yet.
-	protected TreeSet<ResourceEvent> waitingResources = new TreeSet<>(new ResourceEventComparator());
+	protected DenseIdSet<ResourceEvent> waitingResources = new DenseIdSet<>(resource -> resource.index);
+
+	// The number of ResourceEvents created, which is the index of the next one.
+	int numberOfResourceEvents = 0;
 
 	// The maximum life time of a resource in seconds. This is a parameter of the simulator. 
 	public long ResourceMaximumLifeTime;
@@ -75,6 +93,33 @@ public class Simulator {
 	// Full path to a KML defining the bounding polygon to crop the map
 	protected String boundingPolygonKMLFile;
 
+	// The number of threads used to pre-compute the all-pair travel times; 0 means one per available processor.
+	protected int pathTableThreads = 0;
+
+	// The routing engine answering travel-time queries: ROUTING_ENGINE_TABLE or ROUTING_ENGINE_CONTRACTION_HIERARCHY.
+	protected String routingEngine = ROUTING_ENGINE_TABLE;
+
+	// The event queue of the simulation: EVENT_QUEUE_HEAP or EVENT_QUEUE_CALENDAR.
+	protected String eventQueue = EVENT_QUEUE_CALENDAR;
+
+	// The directory in which compiled maps and pre-computed travel-time tables are cached; null disables the cache.
+	protected String cacheDirectory = "cache";
+
+	// The number of threads used to build the cost matrix of a pool; 0 means one per available processor.
+	protected int costMatrixThreads = 0;
+
+	// The number of threads used to map match the resources; 0 means one per available processor.
+	protected int mapMatchThreads = 0;
+
+	// The number of threads used to parse the resource dataset file; 0 means one per available processor.
+	protected int parseThreads = 0;
+
+	// The side in meters of the cells of the snap cache used to map match the resources; 0 means no cache.
+	protected double snapCacheResolution = 0;
+
+	// The number of resources on the preference list of an agent in the stable matching of a pool; 0 means all of them.
+	protected int stableMatchingCandidates = 0;
+
 	// The simulation end time is the expiration time of the last resource.
 	protected long simulationEndTime;
 
@@ -120,9 +165,13 @@ public class Simulator {
 	public ArrayList<AgentEvent> agentMatrix = new ArrayList<AgentEvent>();
 	public ArrayList<ResourceEvent> resourceMatrix = new ArrayList<ResourceEvent>();
 
-	public static LinkedList<LinkedList<Double>> agentBenefitList = new LinkedList<>();
+	// The benefit matrix of the current pool, resources by agents
+	public double[][] benefitMatrix = new double[0][];
+
+	// The travel times of the current pool, agents by resources
+	public double[][] travelTimeMatrix = new double[0][];
 
-	public static LinkedList<LinkedList<Double>> resourceBenefitList = new LinkedList<>();
+	private CostMatrixBuilder costMatrixBuilder;
 
 	public long initialPoolTime;
 	public long endPoolTime;
@@ -164,26 +213,66 @@ public class Simulator {
 
 		this.totalAgents = totalAgents;
 
+		this.agentStore = new AgentStore((int) this.totalAgents);
+
 		this.boundingPolygonKMLFile = boundingPolygonKMLFile;
 
 		this.ResourceMaximumLifeTime = maximumLifeTime;
 
 		this.resourceFile = resourceFile;
 
-		MapCreator creator = new MapCreator(this.mapJSONFile, this.boundingPolygonKMLFile, speedReduction);
-
-		this.hubs = creator.hubs;
+		this.costMatrixBuilder = new CostMatrixBuilder(costMatrixThreads);
 
-		System.out.println("Creating the map...");
-
-		creator.createMap();
+		// Maps and travel-time tables are cached under the fingerprint of the map inputs.
+		String mapFingerprint = null;
+		if (cacheDirectory != null) {
+			try {
+				mapFingerprint = MapFingerprint.of(mapJSONFile, boundingPolygonKMLFile, speedReduction);
+			} catch (IOException e) {
+				System.out.println("Cannot fingerprint the map inputs: " + e.getMessage());
+			}
+		}
 
-		// Output the map
-		map = creator.outputCityMap();
+		CompiledMap compiledMap = null;
+		if (mapFingerprint != null) {
+			try {
+				compiledMap = CompiledMap.load(CompiledMap.file(cacheDirectory, mapFingerprint));
+			} catch (IOException e) {
+				System.out.println("Cannot read the compiled map: " + e.getMessage());
+			}
+		}
+		if (compiledMap != null) {
+			System.out.println("Loaded the map from " + CompiledMap.file(cacheDirectory, mapFingerprint));
+			MapCreator.loadBoundingPolygon(this.boundingPolygonKMLFile);
+			this.hubs = compiledMap.hubs;
+			map = compiledMap.map;
+		} else {
+			MapCreator creator = new MapCreator(this.mapJSONFile, this.boundingPolygonKMLFile, speedReduction);
+			System.out.println("Creating the map...");
+
+			creator.createMap();
+
+			this.hubs = creator.hubs;
+
+			// Output the map
+			map = creator.outputCityMap();
+
+			if (mapFingerprint != null) {
+				try {
+					CompiledMap.store(CompiledMap.file(cacheDirectory, mapFingerprint), creator);
+				} catch (IOException e) {
+					System.out.println("Cannot write the compiled map: " + e.getMessage());
+				}
+			}
+		}
 
-		// Pre-compute shortest travel times between all pairs of intersections.
-		System.out.println("Pre-computing all pair travel times...");
-		map.calcTravelTimes();
+		// Prepare the travel-time queries of the map.
+		if (ROUTING_ENGINE_CONTRACTION_HIERARCHY.equals(routingEngine)) {
+			System.out.println("Building the contraction hierarchy...");
+			map.calcContractionHierarchy();
+		} else {
+			loadOrCalcPathTable(mapFingerprint);
+		}
 
 		// Make a map copy for agents to use so that an agent cannot modify the map used by
 		// the simulator
@@ -208,7 +297,43 @@ public class Simulator {
 		agents = mapWD.placeAgentsRandomly(this);
 
 		// Initialize the event queue.
-		events = mapWD.getEvents();
+		events = EVENT_QUEUE_HEAP.equals(eventQueue) ? new HeapEventQueue() : new CalendarEventQueue();
+		for (Event event : mapWD.getEvents()) {
+			events.add(event);
+		}
+	}
+
+	/**
+	 * Pre-compute shortest travel times between all pairs of intersections, unless they
+	 * have been cached for the same map, bounding polygon and speed reduction.
+	 *
+	 * @param mapFingerprint the MapFingerprint of the map inputs; null if the cache is disabled
+	 */
+	private void loadOrCalcPathTable(String mapFingerprint) {
+		PathTableCache pathTableCache = null;
+		PathTable pathTable = null;
+		if (mapFingerprint != null) {
+			pathTableCache = new PathTableCache(cacheDirectory, mapFingerprint);
+			try {
+				pathTable = pathTableCache.load(map.intersections().size());
+			} catch (IOException e) {
+				System.out.println("Cannot read the travel time cache: " + e.getMessage());
+			}
+		}
+		if (pathTable != null) {
+			System.out.println("Loaded all pair travel times from " + pathTableCache.file());
+			map.setPathTable(pathTable);
+		} else {
+			System.out.println("Pre-computing all pair travel times...");
+			map.calcTravelTimes(pathTableThreads);
+			if (pathTableCache != null && PathTable.fitsInFile(map.pathTable().size())) {
+				try {
+					pathTableCache.store(map.pathTable());
+				} catch (IOException e) {
+					System.out.println("Cannot write the travel time cache: " + e.getMessage());
+				}
+			}
+		}
 	}
 
 	/**
@@ -243,14 +368,13 @@ public class Simulator {
 					//runAlgo(toTrigger.time);
 
 					long startPoolTime = System.nanoTime();
+					advanceEmptyAgents(toTrigger.time, toTrigger.id);
 					getCostMatrix();
 					runAlgo2(toTrigger.time);
 					numberOfPools++;
-					System.out.println("\nPool "+numberOfPools+ "\n# of resources = "+ agentBenefitList.size() + "\n# of agents = "+ resourceBenefitList.size()+"\n");
+					System.out.println("\nPool "+numberOfPools+ "\n# of resources = "+ benefitMatrix.length + "\n# of agents = "+ travelTimeMatrix.length+"\n");
 					costMatrix.clear();
 					agentMatrix.clear();
-					agentBenefitList.clear();
-					resourceBenefitList.clear();
 					resourceMatrix.clear();
 					initialPoolTime = initialPoolTime + TimeUnit.SECONDS.toSeconds(30);
 					endPoolTime = initialPoolTime + TimeUnit.SECONDS.toSeconds(30);
@@ -271,172 +395,166 @@ public class Simulator {
 		score.end();
 	}
 
+	/**
+	 * Brings the locations of the empty agents that drive committed routes up to date at the moment
+	 * an event is triggered, see AgentEvent.advance.
+	 *
+	 * @param time the time of the event
+	 * @param id the id of the event
+	 */
+	private void advanceEmptyAgents(long time, long id) {
+		for (AgentEvent agent : emptyAgents) {
+			agent.advance(time, id);
+		}
+	}
+
 	public void getCostMatrix(){
-		int counter = 0;
-		for (ResourceEvent resource: resourceMatrix){
-			++counter;
-			double travelDist = MapWithData.distance(resource.pickupLoc.toLatLon()[0], resource.pickupLoc.toLatLon()[1],
-					resource.dropoffLoc.toLatLon()[0], resource.dropoffLoc.toLatLon()[1]);
-
-			LinkedList<Double> tempBenefitList = new LinkedList<>();
-			int agentCount = 0;
-			for (AgentEvent agent : emptyAgents) {
-
-				double dist = MapWithData.distance(agent.loc.toLatLon()[0], agent.loc.toLatLon()[1],
-						resource.pickupLoc.toLatLon()[0], resource.pickupLoc.toLatLon()[1]);
-				double benefit = travelDist / (travelDist + dist);
-				double timeToReach = map.travelTimeBetween(agent.loc,resource.pickupLoc);
-				tempBenefitList.add(benefit);
-				if (counter == 1) {
-					LinkedList<Double> tempList = new LinkedList<>();
-					tempList.add(timeToReach);
-					resourceBenefitList.add(tempList);
-				} else {
-					resourceBenefitList.get(agentCount).add(timeToReach);
-				}
-				//resourceBenefitList.get((int) (simulator.totalResources-1)).add(dist);
-				//benefitList.add(benefit);
-				agentCount++;
-			}
-			agentBenefitList.add(tempBenefitList);
+		costMatrixBuilder.setResources(resourceMatrix);
+		costMatrixBuilder.setAgents(emptyAgents, agentStore);
+		benefitMatrix = costMatrixBuilder.build();
+
+		// the travel times from every empty agent to every pickup location, in one batch
+		List<LocationOnRoad> agentLocations = new ArrayList<>(emptyAgents.size());
+		for (int a = emptyAgents.nextIndex(0); a >= 0; a = emptyAgents.nextIndex(a + 1)) {
+			agentLocations.add(agentStore.location(a));
+			agentMatrix.add(emptyAgents.get(a));
 		}
-		for (AgentEvent agent: emptyAgents){
-			agentMatrix.add(agent);
+		List<LocationOnRoad> pickupLocations = new ArrayList<>(resourceMatrix.size());
+		for (ResourceEvent resource : resourceMatrix) {
+			pickupLocations.add(resource.pickupLoc);
+		}
+		long[][] timesToReach = map.travelTimes(agentLocations, pickupLocations);
+		travelTimeMatrix = new double[timesToReach.length][];
+		for (int a = 0; a < timesToReach.length; a++) {
+			double[] row = new double[timesToReach[a].length];
+			for (int r = 0; r < row.length; r++) {
+				row[r] = timesToReach[a][r];
+			}
+			travelTimeMatrix[a] = row;
 		}
-//		System.out.println("Size of cost matrix: " + costMatrix.size() + ", " +
-//				costMatrix.get(costMatrix.size()-1).size());
-
 	}
 
 	public void runAlgo2(long time)
 	{
 		{
-			int numberOfAgents = resourceBenefitList.size();
-			int numberOfResources = agentBenefitList.size();
-			int[][] agentInput = new int[numberOfAgents][numberOfResources];
-			int[][] resourceInput = new int[numberOfResources][numberOfAgents];
-			for(int i=0;i<numberOfAgents;i++)
-			{
-				Double[] benefitArray = resourceBenefitList.get(i).toArray(Double[]::new);
-				ArrayIndexComparator comparator = new ArrayIndexComparator(benefitArray);
-				Integer[] indexes = comparator.createIndexArray();
-				Arrays.sort(indexes, comparator);
-				for(int j=0;j<indexes.length;j++) {
-					agentInput[i][j] = indexes[j];
+			int numberOfAgents = travelTimeMatrix.length;
+			int numberOfResources = benefitMatrix.length;
+			// the first min(resources, agents) agents propose to the resources in order of travel time;
+			// a resource ranks them by decreasing benefit, and does not tell apart the ones beyond that
+			// many places of its list, so only that many places are built
+			int numberOfProposers = Math.min(numberOfResources, numberOfAgents);
+			int[][] resourceRank = new int[numberOfResources][numberOfProposers];
+			double[] keys = new double[Math.max(numberOfProposers, numberOfResources)];
+			int[] list = new int[numberOfProposers];
+			for (int r = 0; r < numberOfResources; r++) {
+				double[] benefits = benefitMatrix[r];
+				// the highest benefits first and, among equal ones, the highest agent, as the reverse of a stable sort
+				int size = 0;
+				for (int a = 0; a < numberOfAgents; a++) {
+					double key = Double.isNaN(benefits[a]) ? Double.NEGATIVE_INFINITY : -benefits[a];
+					size = BoundedHeap.offer(keys, list, 0, size, numberOfProposers, key, -a);
 				}
-			}
-			for(int i=0;i<numberOfResources;i++)
-			{
-				Double[] benefitArray = agentBenefitList.get(i).toArray(Double[]::new);
-				ArrayIndexComparator comparator = new ArrayIndexComparator(benefitArray);
-				Integer[] indexes = comparator.createIndexArray();
-				Arrays.sort(indexes, comparator);
-				List<Integer> list = Arrays.asList(indexes);
-				Collections.reverse(list);
-				Integer[] finalIndex = list.toArray(Integer[]::new);
-				for(int j=0;j<indexes.length;j++) {
-					resourceInput[i][j] = finalIndex[j];
+				BoundedHeap.sort(keys, list, 0, size);
+				Arrays.fill(resourceRank[r], numberOfProposers);
+				for (int p = 0; p < size; p++) {
+					int a = -list[p];
+					if (a < numberOfProposers) {
+						resourceRank[r][a] = p;
+					}
 				}
 			}
-			Integer[] resourceArray = IntStream.range(0, agentBenefitList.size()).boxed().toArray(Integer[]::new);
-			Integer[] agentArray = IntStream.range(0, resourceBenefitList.size()).boxed().toArray(Integer[]::new);
-			List<AgentEvent> unassignedAgents =  new ArrayList<>();
-			for (AgentEvent agent: emptyAgents){
-				unassignedAgents.add(agent);
-			}
-			List<ResourceEvent> unassignedResources = resourceMatrix;
-
-			try{
-				StableMatching sm = new StableMatching(resourceArray, agentArray, resourceInput, agentInput);
-				Integer[] agentsMatches  = sm.getMatches();
 
-				HashMap<AgentEvent,ResourceEvent> matches = new HashMap<AgentEvent,ResourceEvent>();
-				long earliest = Long.MAX_VALUE;
-				LocationOnRoad bestAgentLocationOnRoad = null;
-				double poolBenefit = 0;
-				for(int i=0;i<agentsMatches.length;i++)
-				{
-					//matches.put(agentMatrix.get(agentsMatches[i]),resourceMatrix.get(i));
-					AgentEvent bestAgent = agentMatrix.get(agentsMatches[i]);
-					poolBenefit+=agentBenefitList.get(agentsMatches[i]).get(i);
-					ResourceEvent currentResource = resourceMatrix.get(0);
-					unassignedResources.remove(currentResource);
-					unassignedAgents.remove(bestAgent);
-
-					long travelTimeToEndIntersection = bestAgent.time - time;
-
-					long travelTimeFromStartIntersection = bestAgent.loc.road.travelTime - travelTimeToEndIntersection;
-					LocationOnRoad agentLocationOnRoad = new LocationOnRoad(bestAgent.loc.road, travelTimeFromStartIntersection);
-					long travelTime = map.travelTimeBetween(agentLocationOnRoad, currentResource.pickupLoc);
-					long arriveTime = travelTime + time;
-					if (arriveTime < earliest) {
-						earliest = arriveTime;
-						bestAgentLocationOnRoad = agentLocationOnRoad;
-					}
+			// the shortest travel times first and, among equal ones, the lowest resource
+			int perProposer = stableMatchingCandidates > 0 ? Math.min(stableMatchingCandidates, numberOfResources) : numberOfResources;
+			int[] first = new int[numberOfProposers + 1];
+			int[] preferences = new int[numberOfProposers * perProposer];
+			int[] ranks = new int[preferences.length];
+			for (int a = 0; a < numberOfProposers; a++) {
+				first[a] = a * perProposer;
+				double[] travelTimes = travelTimeMatrix[a];
+				int size = 0;
+				for (int r = 0; r < numberOfResources; r++) {
+					size = BoundedHeap.offer(keys, preferences, first[a], size, perProposer, travelTimes[r], r);
+				}
+				BoundedHeap.sort(keys, preferences, first[a], size);
+				for (int e = first[a]; e < first[a] + perProposer; e++) {
+					ranks[e] = resourceRank[preferences[e]][a];
+				}
+			}
+			first[numberOfProposers] = preferences.length;
 
-					long cruiseTime = time - bestAgent.startSearchTime;
-					long approachTime = earliest - time;
-					long searchTime = cruiseTime + approachTime;
-					long waitTime = earliest - currentResource.availableTime;
+			int[] agentOfResource = GaleShapley.match(numberOfResources, first, preferences, ranks);
+			List<ResourceEvent> unassignedResources = new ArrayList<>();
 
-					totalAgentCruiseTime += cruiseTime;
-					totalAgentApproachTime += approachTime;
-					totalAgentSearchTime += searchTime;
-					totalResourceWaitTime += waitTime;
-					totalResourceTripTime += currentResource.tripTime;
-					totalAssignments++;
+			long earliest = Long.MAX_VALUE;
+			LocationOnRoad bestAgentLocationOnRoad = null;
+			double poolBenefit = 0;
+			for(int i=0;i<agentOfResource.length;i++)
+			{
+				ResourceEvent currentResource = resourceMatrix.get(i);
+				if (agentOfResource[i] == GaleShapley.UNMATCHED) {
+					unassignedResources.add(currentResource);
+					continue;
+				}
+				AgentEvent bestAgent = agentMatrix.get(agentOfResource[i]);
+				poolBenefit+=benefitMatrix[i][agentOfResource[i]];
+
+				long travelTimeToEndIntersection = bestAgent.locTime() - time;
+
+				Road agentRoad = agentStore.road(bestAgent.index);
+				long travelTimeFromStartIntersection = agentRoad.travelTime - travelTimeToEndIntersection;
+				LocationOnRoad agentLocationOnRoad = new LocationOnRoad(agentRoad, travelTimeFromStartIntersection);
+				long travelTime = map.travelTimeBetween(agentLocationOnRoad, currentResource.pickupLoc);
+				long arriveTime = travelTime + time;
+				if (arriveTime < earliest) {
+					earliest = arriveTime;
+					bestAgentLocationOnRoad = agentLocationOnRoad;
+				}
 
-					emptyAgents.remove(bestAgent);
-					waitingResources.remove(currentResource);
+				long cruiseTime = time - bestAgent.startSearchTime();
+				long approachTime = earliest - time;
+				long searchTime = cruiseTime + approachTime;
+				long waitTime = earliest - currentResource.availableTime;
 
-					events.remove(bestAgent);
-					events.remove(currentResource);
+				totalAgentCruiseTime += cruiseTime;
+				totalAgentApproachTime += approachTime;
+				totalAgentSearchTime += searchTime;
+				totalResourceWaitTime += waitTime;
+				totalResourceTripTime += currentResource.tripTime;
+				totalAssignments++;
 
-					bestAgent.assignedTo(bestAgentLocationOnRoad,
-							time, currentResource.id, currentResource.pickupLoc, currentResource.dropoffLoc);
-					TreeMap<Long,LocationOnRoad> dropOffHubTime = getDropOffHubTime(currentResource.dropoffLoc,hubsLocationOnRoad);
-					LocationOnRoad nearestHub = dropOffHubTime.firstEntry().getValue();
+				emptyAgents.remove(bestAgent);
+				waitingResources.remove(currentResource);
 
-					bestAgent.assignedTo(bestAgentLocationOnRoad,
-							time, currentResource.id, currentResource.pickupLoc, currentResource.dropoffLoc);
+				events.remove(bestAgent);
+				events.remove(currentResource);
 
-					if(dropOffHubTime.firstKey()<60){
-						bestAgent.setEvent(earliest + currentResource.tripTime+dropOffHubTime.firstKey(),
-								nearestHub, AgentEvent.DROPPING_OFF);
-					}else
-						bestAgent.setEvent(earliest + currentResource.tripTime,
-								currentResource.dropoffLoc, AgentEvent.DROPPING_OFF);
+				bestAgent.assignedTo(bestAgentLocationOnRoad,
+						time, currentResource.id, currentResource.pickupLoc, currentResource.dropoffLoc);
+				TreeMap<Long,LocationOnRoad> dropOffHubTime = getDropOffHubTime(currentResource.dropoffLoc,hubsLocationOnRoad);
+				LocationOnRoad nearestHub = dropOffHubTime.firstEntry().getValue();
 
-					events.add(bestAgent);
+				bestAgent.assignedTo(bestAgentLocationOnRoad,
+						time, currentResource.id, currentResource.pickupLoc, currentResource.dropoffLoc);
 
+				if(dropOffHubTime.firstKey()<60){
+					bestAgent.setEvent(earliest + currentResource.tripTime+dropOffHubTime.firstKey(),
+							nearestHub, AgentEvent.DROPPING_OFF);
+				}else
+					bestAgent.setEvent(earliest + currentResource.tripTime,
+							currentResource.dropoffLoc, AgentEvent.DROPPING_OFF);
 
-				}
-				totalBenefitList.add(poolBenefit);
-
-				if(unassignedAgents.size()>0)
-				{
-					for(int i=0;i<unassignedAgents.size();i++) {
-						emptyAgents.add(unassignedAgents.get(i));
-					}
-				}
-				else
-				{
-
-					for(int i=0;i<unassignedResources.size();i++) {
-						ResourceEvent currentResource = unassignedResources.get(i);
-						waitingResources.add(currentResource);
-						currentResource.time += ResourceMaximumLifeTime;
-						currentResource.eventCause = ResourceEvent.EXPIRED; //EXPIRED
-						waitingResources.add(currentResource);
-						if(!events.contains(currentResource))
-							events.add(currentResource);
-					}
-				}
+				events.add(bestAgent);
 
 
 			}
-			catch(Exception e)
-			{
+			totalBenefitList.add(poolBenefit);
+
+			// the resources that no agent proposed to in time wait for the next pools until they expire; their
+			// EXPIRED event, queued by becomeAvailableHandler at availableTime + ResourceMaximumLifeTime, stays
+			// where it is
+			for(int i=0;i<unassignedResources.size();i++) {
+				waitingResources.add(unassignedResources.get(i));
 			}
 
 		}
@@ -563,8 +681,8 @@ public class Simulator {
 				// These agents are in search status and therefore the amount of time they spend on
 				// searching until the end of the simulation should be counted toward the total search time.
 				long totalRemainTime = 0;
-				for (AgentEvent ae: emptyAgents) {
-					totalRemainTime += (simulationEndTime - ae.startSearchTime);
+				for (int a = emptyAgents.nextIndex(0); a >= 0; a = emptyAgents.nextIndex(a + 1)) {
+					totalRemainTime += (simulationEndTime - agentStore.searchStartTime(a));
 				}
 
 				sb.append("average agent search time: " + Math.floorDiv(totalAgentSearchTime + totalRemainTime, (totalAssignments + emptyAgents.size())) + " seconds \n");
@@ -594,59 +712,131 @@ public class Simulator {
 	}
 
 	/**
-	 * Compares agent events
+	 * Retrieves the total number of agents
+	 *
+	 * @return {@code totalAgents }
 	 */
-	class AgentEventComparator implements Comparator<AgentEvent> {
+	public long totalAgents() {
+		return totalAgents;
+	}
 
-		/**
-		 * Checks if two agentEvents are the same by checking their ids.
-		 *
-		 * @param a1 The first agent event
-		 * @param a2 The second agent event
-		 * @return returns 0 if the two agent events are the same, 1 if the id of
-		 * the first agent event is bigger than the id of the second agent event,
-		 * -1 otherwise
-		 */
-		public int compare(AgentEvent a1, AgentEvent a2) {
-			if (a1.id == a2.id)
-				return 0;
-			else if (a1.id > a2.id)
-				return 1;
-			else
-				return -1;
-		}
+	/**
+	 * Sets the number of threads used to pre-compute the all-pair travel times.
+	 * Must be called before configure().
+	 *
+	 * @param pathTableThreads the number of threads; 0 means one per available processor
+	 */
+	public void setPathTableThreads(int pathTableThreads) {
+		this.pathTableThreads = pathTableThreads;
 	}
 
 	/**
-	 * Compares resource events
+	 * Sets the number of threads used to build the cost matrix of a pool. The matrix does not
+	 * depend on the number of threads. Must be called before configure().
+	 *
+	 * @param costMatrixThreads the number of threads; 0 means one per available processor
 	 */
-	class ResourceEventComparator implements Comparator<ResourceEvent> {
-		/**
-		 * Checks if two resourceEvents are the same by checking their ids.
-		 *
-		 * @param a1 The first resource event
-		 * @param a2 The second resource event
-		 * @return returns 0 if the two resource events are the same, 1 if the id of
-		 * the resource event is bigger than the id of the second resource event,
-		 * -1 otherwise
-		 */
-		public int compare(ResourceEvent a1, ResourceEvent a2) {
-			if (a1.id == a2.id)
-				return 0;
-			else if (a1.id > a2.id)
-				return 1;
-			else
-				return -1;
-		}
+	public void setCostMatrixThreads(int costMatrixThreads) {
+		this.costMatrixThreads = costMatrixThreads;
 	}
 
 	/**
-	 * Retrieves the total number of agents
+	 * Sets the number of threads used to map match the pickup and dropoff locations of the
+	 * resources. The locations do not depend on the number of threads. Must be called before
+	 * configure().
 	 *
-	 * @return {@code totalAgents }
+	 * @param mapMatchThreads the number of threads; 0 means one per available processor
 	 */
-	public long totalAgents() {
-		return totalAgents;
+	public void setMapMatchThreads(int mapMatchThreads) {
+		this.mapMatchThreads = mapMatchThreads;
+	}
+
+	/**
+	 * Retrieves the number of threads used to map match the resources
+	 *
+	 * @return {@code mapMatchThreads }
+	 */
+	public int mapMatchThreads() {
+		return mapMatchThreads;
+	}
+
+	/**
+	 * Sets the side of the cells of the snap cache used to map match the pickup and dropoff
+	 * locations of the resources. With a cache, the points are quantized to square cells of this
+	 * side and every cell is matched once. Must be called before configure().
+	 *
+	 * @param snapCacheResolution the side of the cells in meters; 0 means no cache
+	 */
+	public void setSnapCacheResolution(double snapCacheResolution) {
+		this.snapCacheResolution = snapCacheResolution;
+	}
+
+	/**
+	 * Retrieves the side of the cells of the snap cache used to map match the resources
+	 *
+	 * @return {@code snapCacheResolution }
+	 */
+	public double snapCacheResolution() {
+		return snapCacheResolution;
+	}
+
+	/**
+	 * Sets the number of threads used to parse the resource dataset file. The resources do not
+	 * depend on the number of threads. Must be called before configure().
+	 *
+	 * @param parseThreads the number of threads; 0 means one per available processor
+	 */
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * Retrieves the number of threads used to parse the resource dataset file
+	 *
+	 * @return {@code parseThreads }
+	 */
+	public int parseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * Sets the number of resources on the preference list of an agent in the stable matching of a
+	 * pool. With fewer resources than in the pool, an agent only proposes to the ones it reaches the
+	 * fastest and may stay unmatched, and so may resources.
+	 *
+	 * @param stableMatchingCandidates the number of resources; 0 means all of them
+	 */
+	public void setStableMatchingCandidates(int stableMatchingCandidates) {
+		this.stableMatchingCandidates = stableMatchingCandidates;
+	}
+
+	/**
+	 * Sets the routing engine answering travel-time queries. Must be called before configure.
+	 *
+	 * @param routingEngine ROUTING_ENGINE_TABLE or ROUTING_ENGINE_CONTRACTION_HIERARCHY
+	 */
+	public void setRoutingEngine(String routingEngine) {
+		this.routingEngine = routingEngine;
+	}
+
+	/**
+	 * Sets the event queue of the simulation. Both queues trigger the events in the same order.
+	 * Must be called before configure.
+	 *
+	 * @param eventQueue EVENT_QUEUE_HEAP or EVENT_QUEUE_CALENDAR
+	 */
+	public void setEventQueue(String eventQueue) {
+		this.eventQueue = eventQueue;
+	}
+
+	/**
+	 * Sets the directory in which compiled maps and pre-computed travel-time tables are cached.
+	 * Must be called before configure.
+	 *
+	 * @param cacheDirectory the directory; null disables the cache
+	 */
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
 	}
 
 	/**
@@ -661,9 +851,9 @@ public class Simulator {
 	/**
 	 * Sets the events of the simulation.
 	 *
-	 * @param events The PriorityQueue of events
+	 * @param events The EventQueue of events
 	 */
-	public void setEvents(PriorityQueue<Event> events) {
+	public void setEvents(EventQueue events) {
 		this.events = events;
 	}
 
@@ -672,7 +862,7 @@ public class Simulator {
 	 *
 	 * @return {@code events }
 	 */
-	public PriorityQueue<Event> getEvents() {
+	public EventQueue getEvents() {
 		return events;
 	}
 
@@ -681,16 +871,16 @@ public class Simulator {
 	 *
 	 * @return {@code emptyAgents }
 	 */
-	public TreeSet<AgentEvent> getEmptyAgents() {
+	public DenseIdSet<AgentEvent> getEmptyAgents() {
 		return emptyAgents;
 	}
 
 	/**
 	 * Sets the empty agents in the simulation
 	 *
-	 * @param emptyAgents The TreeSet of agent events to set.
+	 * @param emptyAgents The set of agent events to set.
 	 */
-	public void setEmptyAgents(TreeSet<AgentEvent> emptyAgents) {
+	public void setEmptyAgents(DenseIdSet<AgentEvent> emptyAgents) {
 		this.emptyAgents = emptyAgents;
 	}
 
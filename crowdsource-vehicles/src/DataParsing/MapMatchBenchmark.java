@@ -0,0 +1,96 @@
+package DataParsing;
+
+import COMSETsystem.CityMap;
+import COMSETsystem.Link;
+import MapCreation.MapCreator;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MapMatchBenchmark class measures the latency of the nearest-link queries of map matching. It
+ * takes the pickup and dropoff points of a TLC trip record file, repeated up to the requested
+ * number of queries, and finds their nearest links with the original KdTree, built by inserting
+ * the links one at a time, and with the bulk-loaded LinkIndex. The nearest links are checked to be
+ * at the same distance; the number of queries answered with a different link at the same distance
+ * is reported.
+ *
+ * Usage: MapMatchBenchmark map_JSON_file bounding_polygon_KML_file dataset_file [queries [speed_reduction]]
+ */
+public class MapMatchBenchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.out.println("Usage: MapMatchBenchmark map_JSON_file bounding_polygon_KML_file dataset_file [queries [speed_reduction]]");
+			System.exit(1);
+		}
+		int queries = args.length > 3 ? Integer.parseInt(args[3]) : 1000000;
+		double speedReduction = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
+
+		MapCreator creator = new MapCreator(args[0], args[1], speedReduction);
+		creator.createMap();
+		CityMap map = creator.outputCityMap();
+		List<Link> links = creator.links();
+
+		List<Resource> resources = new CSVNewYorkParser(args[2], map.computeZoneId()).parse();
+		if (resources.isEmpty()) {
+			System.out.println("No trip records inside the bounding polygon.");
+			System.exit(1);
+		}
+		Point2D[] points = new Point2D[queries];
+		for (int q = 0; q < queries; q++) {
+			Resource resource = resources.get((q / 2) % resources.size());
+			double[] xy = q % 2 == 0
+					? map.projector().fromLatLon(resource.getPickupLat(), resource.getPickupLon())
+					: map.projector().fromLatLon(resource.getDropoffLat(), resource.getDropoffLon());
+			points[q] = new Point2D.Double(xy[0], xy[1]);
+		}
+		System.out.println("Links: " + links.size() + ", trip records: " + resources.size() + ", queries: " + queries);
+
+		long start = System.nanoTime();
+		KdTree kdTree = new KdTree();
+		for (Link link : links) {
+			kdTree.insert(link);
+		}
+		System.out.println("KdTree built in " + (System.nanoTime() - start) / 1000000 + " ms");
+		start = System.nanoTime();
+		LinkIndex linkIndex = new LinkIndex(links);
+		System.out.println("LinkIndex built in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+		// warm up both on the first points
+		int warmUp = Math.min(queries, 100000);
+		for (int q = 0; q < warmUp; q++) {
+			kdTree.nearest(points[q]);
+			linkIndex.nearest(points[q]);
+		}
+
+		Link[] expected = new Link[queries];
+		start = System.nanoTime();
+		for (int q = 0; q < queries; q++) {
+			expected[q] = kdTree.nearest(points[q]);
+		}
+		long kdTreeTime = System.nanoTime() - start;
+		System.out.println("KdTree: " + kdTreeTime / queries + " ns per query");
+
+		Link[] actual = new Link[queries];
+		start = System.nanoTime();
+		for (int q = 0; q < queries; q++) {
+			actual[q] = linkIndex.nearest(points[q]);
+		}
+		long linkIndexTime = System.nanoTime() - start;
+		System.out.println("LinkIndex: " + linkIndexTime / queries + " ns per query");
+
+		int ties = 0;
+		for (int q = 0; q < queries; q++) {
+			if (expected[q] != actual[q]) {
+				if (expected[q].distanceSq(points[q]) != actual[q].distanceSq(points[q])) {
+					System.out.println("The nearest links differ for query " + q + ".");
+					System.exit(1);
+				}
+				ties++;
+			}
+		}
+		System.out.println("Queries answered with another link at the same distance: " + ties);
+	}
+}
@@ -0,0 +1,160 @@
+package DataParsing;
+
+import java.util.Arrays;
+
+/**
+ * The ResourceColumns class holds the trip records parsed from a resource dataset file in columns,
+ * one primitive array per field. Once parsed, the records are in time order; only the records at
+ * the same time keep the order of the file. The record at index i is the one a Resource would hold,
+ * as returned by resource(i).
+ */
+public class ResourceColumns {
+
+	// The pickup and dropoff locations of every record
+	private double[] pickupLat;
+	private double[] pickupLon;
+	private double[] dropoffLat;
+	private double[] dropoffLon;
+
+	// The pickup time of every record, in Linux epoch seconds
+	private long[] time;
+
+	private int size = 0;
+
+	/**
+	 * Constructs empty columns.
+	 *
+	 * @param capacity the number of records expected; the columns grow beyond it if needed
+	 */
+	public ResourceColumns(int capacity) {
+		capacity = Math.max(capacity, 1);
+		pickupLat = new double[capacity];
+		pickupLon = new double[capacity];
+		dropoffLat = new double[capacity];
+		dropoffLon = new double[capacity];
+		time = new long[capacity];
+	}
+
+	/**
+	 * Adds a record at the end of the columns.
+	 *
+	 * @return the index of the record
+	 */
+	public int add(double pickupLat, double pickupLon, double dropoffLat, double dropoffLon, long time) {
+		if (size == this.time.length) {
+			int capacity = 2 * size;
+			this.pickupLat = Arrays.copyOf(this.pickupLat, capacity);
+			this.pickupLon = Arrays.copyOf(this.pickupLon, capacity);
+			this.dropoffLat = Arrays.copyOf(this.dropoffLat, capacity);
+			this.dropoffLon = Arrays.copyOf(this.dropoffLon, capacity);
+			this.time = Arrays.copyOf(this.time, capacity);
+		}
+		this.pickupLat[size] = pickupLat;
+		this.pickupLon[size] = pickupLon;
+		this.dropoffLat[size] = dropoffLat;
+		this.dropoffLon[size] = dropoffLon;
+		this.time[size] = time;
+		return size++;
+	}
+
+	/**
+	 * @return the number of records
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if there are no records
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public double pickupLat(int i) {
+		return pickupLat[i];
+	}
+
+	public double pickupLon(int i) {
+		return pickupLon[i];
+	}
+
+	public double dropoffLat(int i) {
+		return dropoffLat[i];
+	}
+
+	public double dropoffLon(int i) {
+		return dropoffLon[i];
+	}
+
+	public long time(int i) {
+		return time[i];
+	}
+
+	/**
+	 * Sorts the records by time; the records at the same time keep their order.
+	 *
+	 * @return these columns if they are already in time order, new sorted columns otherwise
+	 */
+	public ResourceColumns sortedByTime() {
+		int i = 1;
+		while (i < size && time[i - 1] <= time[i]) {
+			i++;
+		}
+		if (i >= size) {
+			return this;
+		}
+		Integer[] order = new Integer[size];
+		for (i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		// a stable sort
+		Arrays.sort(order, (a, b) -> Long.compare(time[a], time[b]));
+		ResourceColumns sorted = new ResourceColumns(size);
+		for (int record : order) {
+			sorted.add(this, record);
+		}
+		return sorted;
+	}
+
+	/**
+	 * Merges two columns in time order into new columns; the records at the same time keep their
+	 * order, those of first before those of second.
+	 *
+	 * @param first columns in time order
+	 * @param second columns in time order
+	 * @return the merged columns
+	 */
+	public static ResourceColumns merge(ResourceColumns first, ResourceColumns second) {
+		ResourceColumns merged = new ResourceColumns(first.size + second.size);
+		int i = 0;
+		int j = 0;
+		while (i < first.size && j < second.size) {
+			if (second.time[j] < first.time[i]) {
+				merged.add(second, j++);
+			} else {
+				merged.add(first, i++);
+			}
+		}
+		while (i < first.size) {
+			merged.add(first, i++);
+		}
+		while (j < second.size) {
+			merged.add(second, j++);
+		}
+		return merged;
+	}
+
+	// Adds the record at index i of other.
+	private void add(ResourceColumns other, int i) {
+		add(other.pickupLat[i], other.pickupLon[i], other.dropoffLat[i], other.dropoffLon[i], other.time[i]);
+	}
+
+	/**
+	 * @param i the index of a record
+	 * @return a new Resource holding the record
+	 */
+	public Resource resource(int i) {
+		return new Resource(pickupLat[i], pickupLon[i], dropoffLat[i], dropoffLon[i], time[i]);
+	}
+}
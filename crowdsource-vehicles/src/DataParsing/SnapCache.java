@@ -0,0 +1,113 @@
+package DataParsing;
+
+import COMSETsystem.LocationOnRoad;
+import COMSETsystem.Road;
+
+/**
+ * The SnapCache class remembers the locations that map matching found for the cells of a square
+ * grid over the projected coordinates of the map, so that a point falling in a cell that was
+ * matched before, e.g. at a hotspot such as a station entrance, is not matched again.
+ *
+ * The cells are keyed by a long packing their column and row, in an open-addressing table with
+ * linear probing that holds the road and the offset of every location in primitive-friendly
+ * arrays. The table does not grow: once it holds capacity entries, further cells are not added.
+ *
+ * A cache is not thread-safe; every thread matching points uses its own.
+ */
+public class SnapCache {
+
+	// The side of a cell, in the units of the projected coordinates (meters)
+	private final double resolution;
+
+	// The keys of the cells, with the road and the travel time from the start intersection of their
+	// locations; a slot is empty if its road is null
+	private final long[] keys;
+	private final Road[] roads;
+	private final long[] offsets;
+
+	private final int mask;
+	private final int capacity;
+	private int size = 0;
+
+	/**
+	 * Constructs an empty cache.
+	 *
+	 * @param resolution the side of a cell in meters
+	 * @param capacity the maximum number of cells held
+	 */
+	public SnapCache(double resolution, int capacity) {
+		this.resolution = resolution;
+		this.capacity = capacity;
+		// keep the table at most half full
+		int slots = Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1;
+		keys = new long[slots];
+		roads = new Road[slots];
+		offsets = new long[slots];
+		mask = slots - 1;
+	}
+
+	/**
+	 * @param x the x coordinate of a point
+	 * @param y the y coordinate of a point
+	 * @return the key of the cell holding the point
+	 */
+	public long key(double x, double y) {
+		long column = (long) Math.floor(x / resolution);
+		long row = (long) Math.floor(y / resolution);
+		return (column << 32) | (row & 0xffffffffL);
+	}
+
+	/**
+	 * @param key the key of a cell
+	 * @return the {x, y} coordinates of the center of the cell
+	 */
+	public double[] center(long key) {
+		return new double[] {((key >> 32) + 0.5) * resolution, ((int) key + 0.5) * resolution};
+	}
+
+	/**
+	 * Looks a cell up.
+	 *
+	 * @param key the key of the cell
+	 * @return a new LocationOnRoad equal to the location of the cell, or null if it is not cached
+	 */
+	public LocationOnRoad get(long key) {
+		for (int slot = slot(key); roads[slot] != null; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				return new LocationOnRoad(roads[slot], offsets[slot]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remembers the location of a cell that is not cached, unless the cache is full.
+	 *
+	 * @param key the key of the cell
+	 * @param location the location
+	 */
+	public void put(long key, LocationOnRoad location) {
+		if (size == capacity) {
+			return;
+		}
+		int slot = slot(key);
+		while (roads[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		roads[slot] = location.road;
+		offsets[slot] = location.travelTimeFromStartIntersection;
+		size++;
+	}
+
+	/**
+	 * @return the number of cells held
+	 */
+	public int size() {
+		return size;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+	}
+}
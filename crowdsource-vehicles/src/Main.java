@@ -89,8 +89,82 @@ public class Main {
                 agentPlacementSeed = random.nextLong();
             }
 
+            int pathTableThreads = 0;
+            String pathTableThreadsArg = prop.getProperty("comset.path_table_threads");
+            if (pathTableThreadsArg != null) {
+                pathTableThreads = Integer.parseInt(pathTableThreadsArg.trim());
+            }
+
+            int costMatrixThreads = 0;
+            String costMatrixThreadsArg = prop.getProperty("comset.cost_matrix_threads");
+            if (costMatrixThreadsArg != null) {
+                costMatrixThreads = Integer.parseInt(costMatrixThreadsArg.trim());
+            }
+
+            int mapMatchThreads = 0;
+            String mapMatchThreadsArg = prop.getProperty("comset.map_match_threads");
+            if (mapMatchThreadsArg != null) {
+                mapMatchThreads = Integer.parseInt(mapMatchThreadsArg.trim());
+            }
+
+            double snapCacheResolution = 0;
+            String snapCacheResolutionArg = prop.getProperty("comset.snap_cache_resolution");
+            if (snapCacheResolutionArg != null) {
+                snapCacheResolution = Double.parseDouble(snapCacheResolutionArg.trim());
+            }
+
+            int parseThreads = 0;
+            String parseThreadsArg = prop.getProperty("comset.parse_threads");
+            if (parseThreadsArg != null) {
+                parseThreads = Integer.parseInt(parseThreadsArg.trim());
+            }
+
+            int stableMatchingCandidates = 0;
+            String stableMatchingCandidatesArg = prop.getProperty("comset.stable_matching_candidates");
+            if (stableMatchingCandidatesArg != null) {
+                stableMatchingCandidates = Integer.parseInt(stableMatchingCandidatesArg.trim());
+            }
+
+            String cacheDirectory = "cache";
+            String cacheDirectoryArg = prop.getProperty("comset.cache_dir");
+            if (cacheDirectoryArg != null) {
+                cacheDirectory = cacheDirectoryArg.trim();
+                if (cacheDirectory.isEmpty()) {
+                    cacheDirectory = null;
+                }
+            }
+
+            String routingEngine = Simulator.ROUTING_ENGINE_TABLE;
+            String routingEngineArg = prop.getProperty("comset.routing_engine");
+            if (routingEngineArg != null) {
+                routingEngine = routingEngineArg.trim();
+                if (!routingEngine.equals(Simulator.ROUTING_ENGINE_TABLE) && !routingEngine.equals(Simulator.ROUTING_ENGINE_CONTRACTION_HIERARCHY)) {
+                    System.out.println("The routing engine must be " + Simulator.ROUTING_ENGINE_TABLE + " or " + Simulator.ROUTING_ENGINE_CONTRACTION_HIERARCHY + ".");
+                    System.exit(1);
+                }
+            }
+
+            String eventQueue = Simulator.EVENT_QUEUE_CALENDAR;
+            String eventQueueArg = prop.getProperty("comset.event_queue");
+            if (eventQueueArg != null) {
+                eventQueue = eventQueueArg.trim();
+                if (!eventQueue.equals(Simulator.EVENT_QUEUE_HEAP) && !eventQueue.equals(Simulator.EVENT_QUEUE_CALENDAR)) {
+                    System.out.println("The event queue must be " + Simulator.EVENT_QUEUE_HEAP + " or " + Simulator.EVENT_QUEUE_CALENDAR + ".");
+                    System.exit(1);
+                }
+            }
+
             Class<?> agentClass = Class.forName(agentClassName);
             Simulator simulator = new Simulator((Class<? extends BaseAgent>)agentClass);
+            simulator.setPathTableThreads(pathTableThreads);
+            simulator.setCacheDirectory(cacheDirectory);
+            simulator.setCostMatrixThreads(costMatrixThreads);
+            simulator.setMapMatchThreads(mapMatchThreads);
+            simulator.setSnapCacheResolution(snapCacheResolution);
+            simulator.setParseThreads(parseThreads);
+            simulator.setStableMatchingCandidates(stableMatchingCandidates);
+            simulator.setRoutingEngine(routingEngine);
+            simulator.setEventQueue(eventQueue);
 
             if (!displayLogging) {
                 LogManager.getLogManager().reset();
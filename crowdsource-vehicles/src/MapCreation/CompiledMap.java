@@ -0,0 +1,266 @@
+package MapCreation;
+
+import COMSETsystem.*;
+import DataParsing.GeoProjector;
+import DataParsing.LinkIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The CompiledMap class stores the output of MapCreator in a compact binary file, so that the
+ * OSM JSON file does not have to be parsed, cropped and cleaned again when the simulator is
+ * restarted with the same inputs. The file holds the projector, the vertices, the links, the
+ * intersections, the roads and the hubs, with the ids of links and roads preserved. The links are
+ * stored in the order of MapCreator.links(), so the spatial index is rebuilt identically from
+ * them, and the roads are stored in the order of CityMap.roads().
+ *
+ * The file is memory-mapped and decoded straight from the mapping. New files are written to a
+ * temporary file that is renamed into place, so a reader never sees a partially written map.
+ */
+public class CompiledMap {
+
+	// The first and the last int of a compiled map file.
+	private final static int FILE_MAGIC = 0x434d4150;
+
+	// Bump whenever the file format or the way MapCreator builds a map changes.
+	private final static int VERSION = 1;
+
+	// The map
+	public final CityMap map;
+
+	// The hubs of the map, in the order MapCreator found them
+	public final List<Intersection> hubs;
+
+	private CompiledMap(CityMap map, List<Intersection> hubs) {
+		this.map = map;
+		this.hubs = hubs;
+	}
+
+	/**
+	 * Gets the compiled map file for the given inputs.
+	 *
+	 * @param directory the directory holding the compiled maps
+	 * @param mapFingerprint the MapFingerprint of the inputs of the map
+	 * @return the file
+	 */
+	public static Path file(String directory, String mapFingerprint) {
+		return Paths.get(directory, "map-v" + VERSION + "-" + mapFingerprint + ".bin");
+	}
+
+	/**
+	 * Writes the map created by a MapCreator to a file, replacing any existing file.
+	 *
+	 * @param file the file
+	 * @param creator a MapCreator on which createMap() has been called
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void store(Path file, MapCreator creator) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				write(out, creator);
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Reads a map from a file written by store.
+	 *
+	 * @param file the file
+	 * @return the map, or null if the file does not exist or does not hold a complete compiled map
+	 * @throws IOException if the file exists but cannot be read
+	 */
+	public static CompiledMap load(Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		ByteBuffer in;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return read(in);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	private static void write(DataOutputStream out, MapCreator creator) throws IOException {
+		out.writeInt(FILE_MAGIC);
+		out.writeInt(VERSION);
+
+		out.writeDouble(creator.projector.referenceLatitude());
+		out.writeDouble(creator.projector.referenceLongitude());
+
+		// vertices, in id order
+		Map<Long, Integer> vertexIndex = new TreeMap<>();
+		out.writeInt(creator.vertices.size());
+		for (Vertex vertex : creator.vertices.values()) {
+			vertexIndex.put(vertex.id, vertexIndex.size());
+			out.writeLong(vertex.id);
+			out.writeDouble(vertex.longitude);
+			out.writeDouble(vertex.latitude);
+			out.writeDouble(vertex.getX());
+			out.writeDouble(vertex.getY());
+		}
+
+		// intersections, in id order
+		Map<Long, Integer> intersectionIndex = new TreeMap<>();
+		out.writeInt(creator.intersections.size());
+		for (Intersection intersection : creator.intersections.values()) {
+			intersectionIndex.put(intersection.id, intersectionIndex.size());
+			out.writeInt(vertexIndex.get(intersection.vertex.id));
+		}
+
+		// roads, in the order of CityMap.roads()
+		List<Road> roads = new ArrayList<>();
+		Map<Long, Integer> roadIndex = new TreeMap<>();
+		for (Intersection intersection : creator.intersections.values()) {
+			for (Road road : intersection.getRoadsFrom()) {
+				roadIndex.put(road.id, roads.size());
+				roads.add(road);
+			}
+		}
+
+		// links, in the order of MapCreator.links()
+		Map<Long, Integer> linkIndex = new TreeMap<>();
+		List<Link> links = creator.links();
+		out.writeInt(links.size());
+		for (Link link : links) {
+			linkIndex.put(link.id, linkIndex.size());
+			out.writeLong(link.id);
+			out.writeInt(vertexIndex.get(link.from.id));
+			out.writeInt(vertexIndex.get(link.to.id));
+			out.writeDouble(link.length);
+			out.writeDouble(link.speed);
+			out.writeLong(link.beginTime);
+			out.writeInt(link.road == null ? -1 : roadIndex.get(link.road.id));
+		}
+
+		out.writeInt(roads.size());
+		for (Road road : roads) {
+			out.writeLong(road.id);
+			out.writeInt(intersectionIndex.get(road.from.id));
+			out.writeInt(intersectionIndex.get(road.to.id));
+			out.writeDouble(road.length);
+			out.writeLong(road.travelTime);
+			out.writeInt(road.links.size());
+			for (Link link : road.links) {
+				out.writeInt(linkIndex.get(link.id));
+			}
+		}
+
+		out.writeInt(creator.hubs.size());
+		for (Intersection hub : creator.hubs) {
+			out.writeInt(intersectionIndex.get(hub.id));
+		}
+
+		out.writeInt(FILE_MAGIC);
+	}
+
+	private static CompiledMap read(ByteBuffer in) {
+		if (in.getInt() != FILE_MAGIC || in.getInt() != VERSION) {
+			return null;
+		}
+
+		GeoProjector projector = new GeoProjector(in.getDouble(), in.getDouble());
+
+		Vertex[] vertices = new Vertex[in.getInt()];
+		for (int i = 0; i < vertices.length; i++) {
+			long id = in.getLong();
+			double longitude = in.getDouble();
+			double latitude = in.getDouble();
+			double x = in.getDouble();
+			double y = in.getDouble();
+			vertices[i] = new Vertex(longitude, latitude, x, y, id);
+		}
+
+		Intersection[] intersectionArray = new Intersection[in.getInt()];
+		Map<Long, Intersection> intersections = new TreeMap<>();
+		for (int i = 0; i < intersectionArray.length; i++) {
+			Vertex vertex = vertices[in.getInt()];
+			Intersection intersection = new Intersection(vertex);
+			vertex.intersection = intersection;
+			intersectionArray[i] = intersection;
+			intersections.put(intersection.id, intersection);
+		}
+
+		Link[] links = new Link[in.getInt()];
+		int[] linkRoad = new int[links.length];
+		for (int i = 0; i < links.length; i++) {
+			long id = in.getLong();
+			Vertex from = vertices[in.getInt()];
+			Vertex to = vertices[in.getInt()];
+			double length = in.getDouble();
+			double speed = in.getDouble();
+			Link link = new Link(id, from, to, length, speed);
+			link.beginTime = in.getLong();
+			linkRoad[i] = in.getInt();
+			from.linksMapFrom.put(to, link);
+			to.linksMapTo.put(from, link);
+			links[i] = link;
+		}
+		LinkIndex linkIndex = new LinkIndex(Arrays.asList(links));
+
+		int numberOfRoads = in.getInt();
+		List<Road> roads = new ArrayList<>(numberOfRoads);
+		for (int i = 0; i < numberOfRoads; i++) {
+			long id = in.getLong();
+			Intersection from = intersectionArray[in.getInt()];
+			Intersection to = intersectionArray[in.getInt()];
+			double length = in.getDouble();
+			long travelTime = in.getLong();
+			int numberOfRoadLinks = in.getInt();
+			ArrayList<Link> roadLinks = new ArrayList<>(numberOfRoadLinks);
+			for (int j = 0; j < numberOfRoadLinks; j++) {
+				roadLinks.add(links[in.getInt()]);
+			}
+			Road road = new Road(id, from, to, length, travelTime, roadLinks);
+			from.roadsMapFrom.put(to, road);
+			to.roadsMapTo.put(from, road);
+			roads.add(road);
+		}
+		for (int i = 0; i < links.length; i++) {
+			if (linkRoad[i] >= 0) {
+				links[i].road = roads.get(linkRoad[i]);
+			}
+		}
+
+		List<Intersection> hubs = new LinkedList<>();
+		int numberOfHubs = in.getInt();
+		for (int i = 0; i < numberOfHubs; i++) {
+			hubs.add(intersectionArray[in.getInt()]);
+		}
+
+		if (in.getInt() != FILE_MAGIC || in.hasRemaining()) {
+			return null;
+		}
+		return new CompiledMap(new CityMap(intersections, roads, projector, linkIndex), hubs);
+	}
+}
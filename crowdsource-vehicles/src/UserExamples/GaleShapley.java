@@ -0,0 +1,104 @@
+package UserExamples;
+
+import java.util.Arrays;
+
+/**
+ * The GaleShapley class computes stable matchings with the proposer-proposing deferred acceptance
+ * algorithm of Gale and Shapley, on primitive arrays.
+ *
+ * The preference list of every proposer is given in compressed sparse row form: proposer p
+ * prefers preferences[first[p]] to preferences[first[p] + 1] and so on up to
+ * preferences[first[p + 1] - 1], and does not accept any other acceptor, so a list may be
+ * truncated to the top k acceptors of the proposer. The preference of an acceptor is given by
+ * ranks, at the same positions: ranks[e] is the rank the acceptor of edge e gives to its proposer,
+ * and an acceptor prefers a lower rank. Comparing two proposers therefore takes constant time.
+ * An acceptor that holds a proposal rejects a proposal of equal rank.
+ *
+ * Every free proposer proposes to the next acceptor on its list; the free proposers wait in a
+ * min-heap and the one with the lowest index proposes first, as the smallest unmatched index did
+ * in StableMatching. Every edge is tried at most once, so a matching takes O(E log P) time for E
+ * edges and P proposers.
+ */
+public class GaleShapley {
+
+	// The partner of an acceptor that is not matched.
+	public final static int UNMATCHED = -1;
+
+	private GaleShapley() {}
+
+	/**
+	 * Computes the stable matching of the given preferences that is optimal for the proposers.
+	 *
+	 * @param acceptors the number of acceptors
+	 * @param first the position of the first preference of every proposer, followed by the number of preferences
+	 * @param preferences the acceptors on the preference lists, by decreasing preference of the proposer
+	 * @param ranks the rank of the proposer in the preference of the acceptor, for every preference
+	 * @return for every acceptor, the proposer matched to it, or UNMATCHED
+	 */
+	public static int[] match(int acceptors, int[] first, int[] preferences, int[] ranks) {
+		int proposers = first.length - 1;
+		int[] next = Arrays.copyOf(first, proposers);
+		int[] heldEdge = new int[acceptors];
+		int[] partner = new int[acceptors];
+		Arrays.fill(heldEdge, UNMATCHED);
+		Arrays.fill(partner, UNMATCHED);
+
+		// the free proposers; 0 ... proposers - 1 in order is a valid min-heap
+		int[] free = new int[proposers];
+		for (int p = 0; p < proposers; p++) {
+			free[p] = p;
+		}
+		int numberOfFree = proposers;
+
+		while (numberOfFree > 0) {
+			int proposer = free[0];
+			numberOfFree = pop(free, numberOfFree);
+			while (next[proposer] < first[proposer + 1]) {
+				int e = next[proposer]++;
+				int acceptor = preferences[e];
+				if (heldEdge[acceptor] == UNMATCHED) {
+					heldEdge[acceptor] = e;
+					partner[acceptor] = proposer;
+					break;
+				}
+				if (ranks[e] < ranks[heldEdge[acceptor]]) {
+					numberOfFree = push(free, numberOfFree, partner[acceptor]);
+					heldEdge[acceptor] = e;
+					partner[acceptor] = proposer;
+					break;
+				}
+			}
+			// a proposer whose list is exhausted stays unmatched
+		}
+		return partner;
+	}
+
+	private static int push(int[] heap, int size, int item) {
+		int position = size++;
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (heap[parent] <= item) break;
+			heap[position] = heap[parent];
+			position = parent;
+		}
+		heap[position] = item;
+		return size;
+	}
+
+	private static int pop(int[] heap, int size) {
+		int item = heap[--size];
+		int position = 0;
+		int half = size >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (item <= heap[child]) break;
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = item;
+		return size;
+	}
+}